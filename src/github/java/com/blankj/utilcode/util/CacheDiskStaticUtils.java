@@ -7,7 +7,13 @@ import android.os.Parcelable;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.io.InputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -75,6 +81,103 @@ public final class CacheDiskStaticUtils {
         return getBytes(key, defaultValue, getDefaultCacheDiskUtils());
     }
 
+    ///////////////////////////////////////////////////////////////////////////
+    // about stream
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Put the content of stream in cache, it is copied through a fixed-size buffer so large values
+     * don't have to fit in memory. The stream isn't closed.
+     *
+     * @param key   The key of cache.
+     * @param value The value of cache.
+     */
+    public static void put(@NonNull final String key, @Nullable final InputStream value) {
+        put(key, value, getDefaultCacheDiskUtils());
+    }
+
+    /**
+     * Put the content of stream in cache, it is copied through a fixed-size buffer so large values
+     * don't have to fit in memory. The stream isn't closed.
+     *
+     * @param key      The key of cache.
+     * @param value    The value of cache.
+     * @param saveTime The save time of cache, in seconds.
+     */
+    public static void put(@NonNull final String key, @Nullable final InputStream value, final int saveTime) {
+        put(key, value, saveTime, getDefaultCacheDiskUtils());
+    }
+
+    /**
+     * Return the editor of the bytes in cache, the value is visible after the editor is closed.
+     *
+     * @param key The key of cache.
+     * @return the editor, null if it can't be created
+     */
+    public static CacheDiskUtils.Editor edit(@NonNull final String key) {
+        return edit(key, getDefaultCacheDiskUtils());
+    }
+
+    /**
+     * Return the editor of the bytes in cache, the value is visible after the editor is closed.
+     *
+     * @param key      The key of cache.
+     * @param saveTime The save time of cache, in seconds.
+     * @return the editor, null if it can't be created
+     */
+    public static CacheDiskUtils.Editor edit(@NonNull final String key, final int saveTime) {
+        return edit(key, saveTime, getDefaultCacheDiskUtils());
+    }
+
+    /**
+     * Return the stream of the bytes in cache, the value isn't loaded into memory.
+     *
+     * @param key The key of cache.
+     * @return the stream if cache exists or null otherwise
+     */
+    public static InputStream openInputStream(@NonNull final String key) {
+        return openInputStream(key, getDefaultCacheDiskUtils());
+    }
+
+    /**
+     * Return the read-only channel of the bytes in cache, positioned at the start of the value.
+     * <p>Values packed into segment files or compressed have no channel of their own.</p>
+     *
+     * @param key The key of cache.
+     * @return the channel if cache exists as a standalone file or null otherwise
+     */
+    public static FileChannel openFileChannel(@NonNull final String key) {
+        return openFileChannel(key, getDefaultCacheDiskUtils());
+    }
+
+    /**
+     * Return a range of the bytes in cache, read at its offset without loading the value into
+     * memory.
+     *
+     * @param key    The key of cache.
+     * @param offset The offset of the range in the value.
+     * @param length The length of the range.
+     * @return the bytes of the range, shorter if it passes the end of the value, null if cache
+     * doesn't exist
+     */
+    public static byte[] read(@NonNull final String key, final long offset, final int length) {
+        return read(key, offset, length, getDefaultCacheDiskUtils());
+    }
+
+    /**
+     * Read the bytes in cache from the offset into the buffer, as
+     * {@link FileChannel#read(ByteBuffer, long)} does, without loading the value into memory.
+     *
+     * @param key    The key of cache.
+     * @param dst    The buffer into which the bytes are read.
+     * @param offset The offset in the value.
+     * @return the count of bytes read, -1 if the offset is at the end of the value or cache
+     * doesn't exist
+     */
+    public static int read(@NonNull final String key, @NonNull final ByteBuffer dst, final long offset) {
+        return read(key, dst, offset, getDefaultCacheDiskUtils());
+    }
+
     ///////////////////////////////////////////////////////////////////////////
     // about String
     ///////////////////////////////////////////////////////////////////////////
@@ -263,6 +366,51 @@ public final class CacheDiskStaticUtils {
         return getBitmap(key, defaultValue, getDefaultCacheDiskUtils());
     }
 
+    /**
+     * Put the pixels of bitmap in cache as they are, which skips the PNG encoding of
+     * {@link #put(String, Bitmap)}.
+     *
+     * @param key   The key of cache.
+     * @param value The value of cache.
+     */
+    public static void putRawBitmap(@NonNull final String key, @Nullable final Bitmap value) {
+        putRawBitmap(key, value, getDefaultCacheDiskUtils());
+    }
+
+    /**
+     * Put the pixels of bitmap in cache as they are, which skips the PNG encoding of
+     * {@link #put(String, Bitmap, int)}.
+     *
+     * @param key      The key of cache.
+     * @param value    The value of cache.
+     * @param saveTime The save time of cache, in seconds.
+     */
+    public static void putRawBitmap(@NonNull final String key, @Nullable final Bitmap value, final int saveTime) {
+        putRawBitmap(key, value, saveTime, getDefaultCacheDiskUtils());
+    }
+
+    /**
+     * Return the bitmap put by {@link #putRawBitmap(String, Bitmap)}.
+     *
+     * @param key The key of cache.
+     * @return the bitmap if cache exists or null otherwise
+     */
+    public static Bitmap getRawBitmap(@NonNull final String key) {
+        return getRawBitmap(key, getDefaultCacheDiskUtils());
+    }
+
+    /**
+     * Return the bitmap put by {@link #putRawBitmap(String, Bitmap)}, decoded into the reusable
+     * bitmap if it is mutable and big enough.
+     *
+     * @param key   The key of cache.
+     * @param reuse The reusable bitmap, null to create a new one.
+     * @return the reused or a new bitmap if cache exists or null otherwise
+     */
+    public static Bitmap getRawBitmap(@NonNull final String key, @Nullable final Bitmap reuse) {
+        return getRawBitmap(key, reuse, getDefaultCacheDiskUtils());
+    }
+
     ///////////////////////////////////////////////////////////////////////////
     // about Drawable
     ///////////////////////////////////////////////////////////////////////////
@@ -408,6 +556,145 @@ public final class CacheDiskStaticUtils {
         return getSerializable(key, defaultValue, getDefaultCacheDiskUtils());
     }
 
+    ///////////////////////////////////////////////////////////////////////////
+    // about batch
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Put the values in cache, each one is put as the type of its class.
+     * <p>The journal is flushed once for the whole batch.</p>
+     *
+     * @param values The values of cache.
+     */
+    public static void putAll(@NonNull final Map<String, ?> values) {
+        putAll(values, getDefaultCacheDiskUtils());
+    }
+
+    /**
+     * Put the values in cache, each one is put as the type of its class.
+     * <p>The journal is flushed once for the whole batch.</p>
+     *
+     * @param values   The values of cache.
+     * @param saveTime The save time of cache, in seconds.
+     */
+    public static void putAll(@NonNull final Map<String, ?> values, final int saveTime) {
+        putAll(values, saveTime, getDefaultCacheDiskUtils());
+    }
+
+    /**
+     * Return the values in cache.
+     *
+     * @param keys The keys of cache.
+     * @return the values of the keys which exist
+     */
+    public static Map<String, Object> getAll(@NonNull final Collection<String> keys) {
+        return getAll(keys, getDefaultCacheDiskUtils());
+    }
+
+    /**
+     * Return the values in cache, each one as the type it was put. Parcelables and values put
+     * before types were stored are returned as bytes.
+     * <p>The usages of the hits are updated with one journal flush.</p>
+     *
+     * @param keys     The keys of cache.
+     * @param parallel True to read the files across the io pool.
+     * @return the values of the keys which exist
+     */
+    public static Map<String, Object> getAll(@NonNull final Collection<String> keys, final boolean parallel) {
+        return getAll(keys, parallel, getDefaultCacheDiskUtils());
+    }
+
+    /**
+     * Remove the cache by keys.
+     * <p>The journal is flushed once for the whole batch.</p>
+     *
+     * @param keys The keys of cache.
+     * @return {@code true}: success<br>{@code false}: fail
+     */
+    public static boolean removeAll(@NonNull final Collection<String> keys) {
+        return removeAll(keys, getDefaultCacheDiskUtils());
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // about key
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Return the keys in cache, see {@link #keysWithPrefix(String)}.
+     *
+     * @return the sorted keys
+     */
+    public static List<String> keys() {
+        return keys(getDefaultCacheDiskUtils());
+    }
+
+    /**
+     * Return the keys in cache which start with the prefix, looked up in the sorted key index
+     * without touching the files.
+     *
+     * @param prefix The prefix of the keys.
+     * @return the sorted keys
+     */
+    public static List<String> keysWithPrefix(@NonNull final String prefix) {
+        return keysWithPrefix(prefix, getDefaultCacheDiskUtils());
+    }
+
+    /**
+     * Remove the cache of the keys which start with the prefix, see
+     * {@link #keysWithPrefix(String)}.
+     *
+     * @param prefix The prefix of the keys.
+     * @return {@code true}: success<br>{@code false}: fail
+     */
+    public static boolean removeByPrefix(@NonNull final String prefix) {
+        return removeByPrefix(prefix, getDefaultCacheDiskUtils());
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // about tag
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Put the value in cache with tags, it is put as the type of its class.
+     * <p>The tags replace the ones of the former value of the key, see
+     * {@link #invalidateTag(String)}.</p>
+     *
+     * @param key      The key of cache.
+     * @param value    The value of cache.
+     * @param saveTime The save time of cache, in seconds.
+     * @param tags     The tags of the value.
+     */
+    public static void put(@NonNull final String key,
+                           @Nullable final Object value,
+                           final int saveTime,
+                           @NonNull final String... tags) {
+        put(key, value, saveTime, tags, getDefaultCacheDiskUtils());
+    }
+
+    /**
+     * Put the values in cache with tags, each one is put as the type of its class.
+     * <p>The journal is flushed once for the whole batch.</p>
+     *
+     * @param values   The values of cache.
+     * @param saveTime The save time of cache, in seconds.
+     * @param tags     The tags of every value.
+     */
+    public static void putAll(@NonNull final Map<String, ?> values,
+                              final int saveTime,
+                              @NonNull final String... tags) {
+        putAll(values, saveTime, tags, getDefaultCacheDiskUtils());
+    }
+
+    /**
+     * Remove every value put with the tag.
+     *
+     * @param tag The tag.
+     * @return {@code true}: success<br>{@code false}: fail
+     */
+    public static boolean invalidateTag(@NonNull final String tag) {
+        return invalidateTag(tag, getDefaultCacheDiskUtils());
+    }
+
     /**
      * Return the size of cache, in bytes.
      *
@@ -417,6 +704,15 @@ public final class CacheDiskStaticUtils {
         return getCacheSize(getDefaultCacheDiskUtils());
     }
 
+    /**
+     * Return the statistics of lookups since the cache was opened.
+     *
+     * @return the statistics
+     */
+    public static CacheDiskUtils.Stats getStats() {
+        return getStats(getDefaultCacheDiskUtils());
+    }
+
     /**
      * Return the count of cache.
      *
@@ -436,6 +732,16 @@ public final class CacheDiskStaticUtils {
         return remove(key, getDefaultCacheDiskUtils());
     }
 
+    /**
+     * Return whether the cache of key exists and isn't due, whatever its type.
+     *
+     * @param key The key of cache.
+     * @return {@code true}: yes<br>{@code false}: no
+     */
+    public static boolean contains(@NonNull final String key) {
+        return contains(key, getDefaultCacheDiskUtils());
+    }
+
     /**
      * Clear all of the cache.
      *
@@ -445,6 +751,22 @@ public final class CacheDiskStaticUtils {
         return clear(getDefaultCacheDiskUtils());
     }
 
+    /**
+     * Invalidate all of the cache in O(1).
+     * <p>A new generation is started, the values put before are invisible at once and their files
+     * are reclaimed in background, unlike {@link #clear()} which deletes them before it returns.</p>
+     */
+    public static void invalidateAll() {
+        invalidateAll(getDefaultCacheDiskUtils());
+    }
+
+    /**
+     * Block until the values put before are written, a no-op without write-behind.
+     */
+    public static void flush() {
+        flush(getDefaultCacheDiskUtils());
+    }
+
     ///////////////////////////////////////////////////////////////////////////
     // dividing line
     ///////////////////////////////////////////////////////////////////////////
@@ -502,6 +824,127 @@ public final class CacheDiskStaticUtils {
         return cacheDiskUtils.getBytes(key, defaultValue);
     }
 
+    ///////////////////////////////////////////////////////////////////////////
+    // about stream
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Put the content of stream in cache, it is copied through a fixed-size buffer so large values
+     * don't have to fit in memory. The stream isn't closed.
+     *
+     * @param key            The key of cache.
+     * @param value          The value of cache.
+     * @param cacheDiskUtils The instance of {@link CacheDiskUtils}.
+     */
+    public static void put(@NonNull final String key,
+                           @Nullable final InputStream value,
+                           @NonNull final CacheDiskUtils cacheDiskUtils) {
+        cacheDiskUtils.put(key, value);
+    }
+
+    /**
+     * Put the content of stream in cache, it is copied through a fixed-size buffer so large values
+     * don't have to fit in memory. The stream isn't closed.
+     *
+     * @param key            The key of cache.
+     * @param value          The value of cache.
+     * @param saveTime       The save time of cache, in seconds.
+     * @param cacheDiskUtils The instance of {@link CacheDiskUtils}.
+     */
+    public static void put(@NonNull final String key,
+                           @Nullable final InputStream value,
+                           final int saveTime,
+                           @NonNull final CacheDiskUtils cacheDiskUtils) {
+        cacheDiskUtils.put(key, value, saveTime);
+    }
+
+    /**
+     * Return the editor of the bytes in cache, the value is visible after the editor is closed.
+     *
+     * @param key            The key of cache.
+     * @param cacheDiskUtils The instance of {@link CacheDiskUtils}.
+     * @return the editor, null if it can't be created
+     */
+    public static CacheDiskUtils.Editor edit(@NonNull final String key,
+                                             @NonNull final CacheDiskUtils cacheDiskUtils) {
+        return cacheDiskUtils.edit(key);
+    }
+
+    /**
+     * Return the editor of the bytes in cache, the value is visible after the editor is closed.
+     *
+     * @param key            The key of cache.
+     * @param saveTime       The save time of cache, in seconds.
+     * @param cacheDiskUtils The instance of {@link CacheDiskUtils}.
+     * @return the editor, null if it can't be created
+     */
+    public static CacheDiskUtils.Editor edit(@NonNull final String key,
+                                             final int saveTime,
+                                             @NonNull final CacheDiskUtils cacheDiskUtils) {
+        return cacheDiskUtils.edit(key, saveTime);
+    }
+
+    /**
+     * Return the stream of the bytes in cache, the value isn't loaded into memory.
+     *
+     * @param key            The key of cache.
+     * @param cacheDiskUtils The instance of {@link CacheDiskUtils}.
+     * @return the stream if cache exists or null otherwise
+     */
+    public static InputStream openInputStream(@NonNull final String key,
+                                              @NonNull final CacheDiskUtils cacheDiskUtils) {
+        return cacheDiskUtils.openInputStream(key);
+    }
+
+    /**
+     * Return the read-only channel of the bytes in cache, positioned at the start of the value.
+     * <p>Values packed into segment files or compressed have no channel of their own.</p>
+     *
+     * @param key            The key of cache.
+     * @param cacheDiskUtils The instance of {@link CacheDiskUtils}.
+     * @return the channel if cache exists as a standalone file or null otherwise
+     */
+    public static FileChannel openFileChannel(@NonNull final String key,
+                                              @NonNull final CacheDiskUtils cacheDiskUtils) {
+        return cacheDiskUtils.openFileChannel(key);
+    }
+
+    /**
+     * Return a range of the bytes in cache, read at its offset without loading the value into
+     * memory.
+     *
+     * @param key            The key of cache.
+     * @param offset         The offset of the range in the value.
+     * @param length         The length of the range.
+     * @param cacheDiskUtils The instance of {@link CacheDiskUtils}.
+     * @return the bytes of the range, shorter if it passes the end of the value, null if cache
+     * doesn't exist
+     */
+    public static byte[] read(@NonNull final String key,
+                              final long offset,
+                              final int length,
+                              @NonNull final CacheDiskUtils cacheDiskUtils) {
+        return cacheDiskUtils.read(key, offset, length);
+    }
+
+    /**
+     * Read the bytes in cache from the offset into the buffer, as
+     * {@link FileChannel#read(ByteBuffer, long)} does, without loading the value into memory.
+     *
+     * @param key            The key of cache.
+     * @param dst            The buffer into which the bytes are read.
+     * @param offset         The offset in the value.
+     * @param cacheDiskUtils The instance of {@link CacheDiskUtils}.
+     * @return the count of bytes read, -1 if the offset is at the end of the value or cache
+     * doesn't exist
+     */
+    public static int read(@NonNull final String key,
+                           @NonNull final ByteBuffer dst,
+                           final long offset,
+                           @NonNull final CacheDiskUtils cacheDiskUtils) {
+        return cacheDiskUtils.read(key, dst, offset);
+    }
+
     ///////////////////////////////////////////////////////////////////////////
     // about String
     ///////////////////////////////////////////////////////////////////////////
@@ -732,6 +1175,62 @@ public final class CacheDiskStaticUtils {
         return cacheDiskUtils.getBitmap(key, defaultValue);
     }
 
+    /**
+     * Put the pixels of bitmap in cache as they are, which skips the PNG encoding of
+     * {@link #put(String, Bitmap, CacheDiskUtils)}.
+     *
+     * @param key            The key of cache.
+     * @param value          The value of cache.
+     * @param cacheDiskUtils The instance of {@link CacheDiskUtils}.
+     */
+    public static void putRawBitmap(@NonNull final String key,
+                                    @Nullable final Bitmap value,
+                                    @NonNull final CacheDiskUtils cacheDiskUtils) {
+        cacheDiskUtils.putRawBitmap(key, value);
+    }
+
+    /**
+     * Put the pixels of bitmap in cache as they are, which skips the PNG encoding of
+     * {@link #put(String, Bitmap, int, CacheDiskUtils)}.
+     *
+     * @param key            The key of cache.
+     * @param value          The value of cache.
+     * @param saveTime       The save time of cache, in seconds.
+     * @param cacheDiskUtils The instance of {@link CacheDiskUtils}.
+     */
+    public static void putRawBitmap(@NonNull final String key,
+                                    @Nullable final Bitmap value,
+                                    final int saveTime,
+                                    @NonNull final CacheDiskUtils cacheDiskUtils) {
+        cacheDiskUtils.putRawBitmap(key, value, saveTime);
+    }
+
+    /**
+     * Return the bitmap put by {@link #putRawBitmap(String, Bitmap, CacheDiskUtils)}.
+     *
+     * @param key            The key of cache.
+     * @param cacheDiskUtils The instance of {@link CacheDiskUtils}.
+     * @return the bitmap if cache exists or null otherwise
+     */
+    public static Bitmap getRawBitmap(@NonNull final String key, @NonNull final CacheDiskUtils cacheDiskUtils) {
+        return cacheDiskUtils.getRawBitmap(key);
+    }
+
+    /**
+     * Return the bitmap put by {@link #putRawBitmap(String, Bitmap, CacheDiskUtils)}, decoded into
+     * the reusable bitmap if it is mutable and big enough.
+     *
+     * @param key            The key of cache.
+     * @param reuse          The reusable bitmap, null to create a new one.
+     * @param cacheDiskUtils The instance of {@link CacheDiskUtils}.
+     * @return the reused or a new bitmap if cache exists or null otherwise
+     */
+    public static Bitmap getRawBitmap(@NonNull final String key,
+                                      @Nullable final Bitmap reuse,
+                                      @NonNull final CacheDiskUtils cacheDiskUtils) {
+        return cacheDiskUtils.getRawBitmap(key, reuse);
+    }
+
     ///////////////////////////////////////////////////////////////////////////
     // about Drawable
     ///////////////////////////////////////////////////////////////////////////
@@ -910,6 +1409,167 @@ public final class CacheDiskStaticUtils {
         return cacheDiskUtils.getSerializable(key, defaultValue);
     }
 
+    ///////////////////////////////////////////////////////////////////////////
+    // about batch
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Put the values in cache, each one is put as the type of its class.
+     * <p>The journal is flushed once for the whole batch.</p>
+     *
+     * @param values         The values of cache.
+     * @param cacheDiskUtils The instance of {@link CacheDiskUtils}.
+     */
+    public static void putAll(@NonNull final Map<String, ?> values,
+                              @NonNull final CacheDiskUtils cacheDiskUtils) {
+        cacheDiskUtils.putAll(values);
+    }
+
+    /**
+     * Put the values in cache, each one is put as the type of its class.
+     * <p>The journal is flushed once for the whole batch.</p>
+     *
+     * @param values         The values of cache.
+     * @param saveTime       The save time of cache, in seconds.
+     * @param cacheDiskUtils The instance of {@link CacheDiskUtils}.
+     */
+    public static void putAll(@NonNull final Map<String, ?> values,
+                              final int saveTime,
+                              @NonNull final CacheDiskUtils cacheDiskUtils) {
+        cacheDiskUtils.putAll(values, saveTime);
+    }
+
+    /**
+     * Return the values in cache.
+     *
+     * @param keys           The keys of cache.
+     * @param cacheDiskUtils The instance of {@link CacheDiskUtils}.
+     * @return the values of the keys which exist
+     */
+    public static Map<String, Object> getAll(@NonNull final Collection<String> keys,
+                                             @NonNull final CacheDiskUtils cacheDiskUtils) {
+        return cacheDiskUtils.getAll(keys);
+    }
+
+    /**
+     * Return the values in cache, each one as the type it was put. Parcelables and values put
+     * before types were stored are returned as bytes.
+     * <p>The usages of the hits are updated with one journal flush.</p>
+     *
+     * @param keys           The keys of cache.
+     * @param parallel       True to read the files across the io pool.
+     * @param cacheDiskUtils The instance of {@link CacheDiskUtils}.
+     * @return the values of the keys which exist
+     */
+    public static Map<String, Object> getAll(@NonNull final Collection<String> keys,
+                                             final boolean parallel,
+                                             @NonNull final CacheDiskUtils cacheDiskUtils) {
+        return cacheDiskUtils.getAll(keys, parallel);
+    }
+
+    /**
+     * Remove the cache by keys.
+     * <p>The journal is flushed once for the whole batch.</p>
+     *
+     * @param keys           The keys of cache.
+     * @param cacheDiskUtils The instance of {@link CacheDiskUtils}.
+     * @return {@code true}: success<br>{@code false}: fail
+     */
+    public static boolean removeAll(@NonNull final Collection<String> keys,
+                                    @NonNull final CacheDiskUtils cacheDiskUtils) {
+        return cacheDiskUtils.removeAll(keys);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // about key
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Return the keys in cache, see {@link #keysWithPrefix(String, CacheDiskUtils)}.
+     *
+     * @param cacheDiskUtils The instance of {@link CacheDiskUtils}.
+     * @return the sorted keys
+     */
+    public static List<String> keys(@NonNull final CacheDiskUtils cacheDiskUtils) {
+        return cacheDiskUtils.keys();
+    }
+
+    /**
+     * Return the keys in cache which start with the prefix, looked up in the sorted key index
+     * without touching the files.
+     *
+     * @param prefix         The prefix of the keys.
+     * @param cacheDiskUtils The instance of {@link CacheDiskUtils}.
+     * @return the sorted keys
+     */
+    public static List<String> keysWithPrefix(@NonNull final String prefix,
+                                              @NonNull final CacheDiskUtils cacheDiskUtils) {
+        return cacheDiskUtils.keysWithPrefix(prefix);
+    }
+
+    /**
+     * Remove the cache of the keys which start with the prefix, see
+     * {@link #keysWithPrefix(String, CacheDiskUtils)}.
+     *
+     * @param prefix         The prefix of the keys.
+     * @param cacheDiskUtils The instance of {@link CacheDiskUtils}.
+     * @return {@code true}: success<br>{@code false}: fail
+     */
+    public static boolean removeByPrefix(@NonNull final String prefix,
+                                         @NonNull final CacheDiskUtils cacheDiskUtils) {
+        return cacheDiskUtils.removeByPrefix(prefix);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // about tag
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Put the value in cache with tags, it is put as the type of its class.
+     * <p>The tags replace the ones of the former value of the key, see
+     * {@link #invalidateTag(String, CacheDiskUtils)}.</p>
+     *
+     * @param key            The key of cache.
+     * @param value          The value of cache.
+     * @param saveTime       The save time of cache, in seconds.
+     * @param tags           The tags of the value.
+     * @param cacheDiskUtils The instance of {@link CacheDiskUtils}.
+     */
+    public static void put(@NonNull final String key,
+                           @Nullable final Object value,
+                           final int saveTime,
+                           @NonNull final String[] tags,
+                           @NonNull final CacheDiskUtils cacheDiskUtils) {
+        cacheDiskUtils.put(key, value, saveTime, tags);
+    }
+
+    /**
+     * Put the values in cache with tags, each one is put as the type of its class.
+     * <p>The journal is flushed once for the whole batch.</p>
+     *
+     * @param values         The values of cache.
+     * @param saveTime       The save time of cache, in seconds.
+     * @param tags           The tags of every value.
+     * @param cacheDiskUtils The instance of {@link CacheDiskUtils}.
+     */
+    public static void putAll(@NonNull final Map<String, ?> values,
+                              final int saveTime,
+                              @NonNull final String[] tags,
+                              @NonNull final CacheDiskUtils cacheDiskUtils) {
+        cacheDiskUtils.putAll(values, saveTime, tags);
+    }
+
+    /**
+     * Remove every value put with the tag.
+     *
+     * @param tag            The tag.
+     * @param cacheDiskUtils The instance of {@link CacheDiskUtils}.
+     * @return {@code true}: success<br>{@code false}: fail
+     */
+    public static boolean invalidateTag(@NonNull final String tag, @NonNull final CacheDiskUtils cacheDiskUtils) {
+        return cacheDiskUtils.invalidateTag(tag);
+    }
+
     /**
      * Return the size of cache, in bytes.
      *
@@ -920,6 +1580,16 @@ public final class CacheDiskStaticUtils {
         return cacheDiskUtils.getCacheSize();
     }
 
+    /**
+     * Return the statistics of lookups since the cache was opened.
+     *
+     * @param cacheDiskUtils The instance of {@link CacheDiskUtils}.
+     * @return the statistics
+     */
+    public static CacheDiskUtils.Stats getStats(@NonNull final CacheDiskUtils cacheDiskUtils) {
+        return cacheDiskUtils.getStats();
+    }
+
     /**
      * Return the count of cache.
      *
@@ -941,6 +1611,17 @@ public final class CacheDiskStaticUtils {
         return cacheDiskUtils.remove(key);
     }
 
+    /**
+     * Return whether the cache of key exists and isn't due, whatever its type.
+     *
+     * @param key            The key of cache.
+     * @param cacheDiskUtils The instance of {@link CacheDiskUtils}.
+     * @return {@code true}: yes<br>{@code false}: no
+     */
+    public static boolean contains(@NonNull final String key, @NonNull final CacheDiskUtils cacheDiskUtils) {
+        return cacheDiskUtils.contains(key);
+    }
+
     /**
      * Clear all of the cache.
      *
@@ -951,6 +1632,27 @@ public final class CacheDiskStaticUtils {
         return cacheDiskUtils.clear();
     }
 
+    /**
+     * Invalidate all of the cache in O(1).
+     * <p>A new generation is started, the values put before are invisible at once and their files
+     * are reclaimed in background, unlike {@link #clear(CacheDiskUtils)} which deletes them before
+     * it returns.</p>
+     *
+     * @param cacheDiskUtils The instance of {@link CacheDiskUtils}.
+     */
+    public static void invalidateAll(@NonNull final CacheDiskUtils cacheDiskUtils) {
+        cacheDiskUtils.invalidateAll();
+    }
+
+    /**
+     * Block until the values put before are written, a no-op without write-behind.
+     *
+     * @param cacheDiskUtils The instance of {@link CacheDiskUtils}.
+     */
+    public static void flush(@NonNull final CacheDiskUtils cacheDiskUtils) {
+        cacheDiskUtils.flush();
+    }
+
     @NonNull
     private static CacheDiskUtils getDefaultCacheDiskUtils() {
         return sDefaultCacheDiskUtils != null ? sDefaultCacheDiskUtils : CacheDiskUtils.getInstance();
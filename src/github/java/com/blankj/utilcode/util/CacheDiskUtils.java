@@ -1,8 +1,11 @@
 package com.blankj.utilcode.util;
 
+import android.content.res.AssetFileDescriptor;
 import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
+import android.os.Build;
 import android.os.Parcelable;
+import android.os.Process;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
@@ -12,16 +15,57 @@ import com.blankj.utilcode.constant.CacheConstants;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
 import java.io.Serializable;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Locale;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 /**
  * <pre>
@@ -36,6 +80,8 @@ public final class CacheDiskUtils implements CacheConstants {
     private static final long   DEFAULT_MAX_SIZE  = Long.MAX_VALUE;
     private static final int    DEFAULT_MAX_COUNT = Integer.MAX_VALUE;
     private static final String CACHE_PREFIX      = "cdu_";
+    private static final String TEMP_PREFIX       = "tmp_";
+    private static final String BLOB_DIR          = "blob";
     private static final String TYPE_BYTE         = "by_";
     private static final String TYPE_STRING       = "st_";
     private static final String TYPE_JSON_OBJECT  = "jo_";
@@ -44,6 +90,7 @@ public final class CacheDiskUtils implements CacheConstants {
     private static final String TYPE_DRAWABLE     = "dr_";
     private static final String TYPE_PARCELABLE   = "pa_";
     private static final String TYPE_SERIALIZABLE = "se_";
+    private static final String TYPE_RAW_BITMAP   = "rb_";
 
     private static final Map<String, CacheDiskUtils> CACHE_MAP = new HashMap<>();
 
@@ -51,7 +98,8 @@ public final class CacheDiskUtils implements CacheConstants {
     private final File             mCacheDir;
     private final long             mMaxSize;
     private final int              mMaxCount;
-    private       DiskCacheManager mDiskCacheManager;
+    private final Config           mConfig;
+    private volatile DiskCacheManager mDiskCacheManager;
 
     /**
      * Return the single {@link CacheDiskUtils} instance.
@@ -128,13 +176,30 @@ public final class CacheDiskUtils implements CacheConstants {
     public static CacheDiskUtils getInstance(@NonNull final File cacheDir,
                                              final long maxSize,
                                              final int maxCount) {
+        return getInstance(cacheDir, maxSize, maxCount, new Config());
+    }
+
+    /**
+     * Return the single {@link CacheDiskUtils} instance.
+     * <p>The config only takes effect when the instance is created.</p>
+     *
+     * @param cacheDir The directory of cache.
+     * @param maxSize  The max size of cache, in bytes.
+     * @param maxCount The max count of cache.
+     * @param config   The config of cache.
+     * @return the single {@link CacheDiskUtils} instance
+     */
+    public static CacheDiskUtils getInstance(@NonNull final File cacheDir,
+                                             final long maxSize,
+                                             final int maxCount,
+                                             @NonNull final Config config) {
         final String cacheKey = cacheDir.getAbsoluteFile() + "_" + maxSize + "_" + maxCount;
         CacheDiskUtils cache = CACHE_MAP.get(cacheKey);
         if (cache == null) {
             synchronized (CacheDiskUtils.class) {
                 cache = CACHE_MAP.get(cacheKey);
                 if (cache == null) {
-                    cache = new CacheDiskUtils(cacheKey, cacheDir, maxSize, maxCount);
+                    cache = new CacheDiskUtils(cacheKey, cacheDir, maxSize, maxCount, config);
                     CACHE_MAP.put(cacheKey, cache);
                 }
             }
@@ -145,23 +210,32 @@ public final class CacheDiskUtils implements CacheConstants {
     private CacheDiskUtils(final String cacheKey,
                            final File cacheDir,
                            final long maxSize,
-                           final int maxCount) {
+                           final int maxCount,
+                           final Config config) {
         mCacheKey = cacheKey;
         mCacheDir = cacheDir;
         mMaxSize = maxSize;
         mMaxCount = maxCount;
+        mConfig = config;
     }
 
     private DiskCacheManager getDiskCacheManager() {
         if (mCacheDir.exists()) {
             if (mDiskCacheManager == null) {
-                mDiskCacheManager = new DiskCacheManager(mCacheDir, mMaxSize, mMaxCount);
+                synchronized (this) {
+                    if (mDiskCacheManager == null) {
+                        mDiskCacheManager = new DiskCacheManager(mCacheDir, mMaxSize, mMaxCount, mConfig);
+                    }
+                }
             }
         } else {
-            if (mCacheDir.mkdirs()) {
-                mDiskCacheManager = new DiskCacheManager(mCacheDir, mMaxSize, mMaxCount);
-            } else {
-                Log.e("CacheDiskUtils", "can't make dirs in " + mCacheDir.getAbsolutePath());
+            synchronized (this) {
+                if (mCacheDir.exists() || mCacheDir.mkdirs()) {
+                    if (mDiskCacheManager != null) mDiskCacheManager.close();
+                    mDiskCacheManager = new DiskCacheManager(mCacheDir, mMaxSize, mMaxCount, mConfig);
+                } else {
+                    Log.e("CacheDiskUtils", "can't make dirs in " + mCacheDir.getAbsolutePath());
+                }
             }
         }
         return mDiskCacheManager;
@@ -172,6 +246,17 @@ public final class CacheDiskUtils implements CacheConstants {
         return mCacheKey + "@" + Integer.toHexString(hashCode());
     }
 
+    /**
+     * Set the max size shared by the instances which joined the global budget by
+     * {@link Config#setBudgetWeight(int)}. Entries are evicted across them to stay under it, on
+     * top of the limits of each instance.
+     *
+     * @param maxSize The max size, in bytes.
+     */
+    public static void setGlobalMaxSize(final long maxSize) {
+        GlobalBudget.setMaxSize(maxSize);
+    }
+
     ///////////////////////////////////////////////////////////////////////////
     // about bytes
     ///////////////////////////////////////////////////////////////////////////
@@ -201,11 +286,7 @@ public final class CacheDiskUtils implements CacheConstants {
         if (value == null) return;
         DiskCacheManager diskCacheManager = getDiskCacheManager();
         if (diskCacheManager == null) return;
-        if (saveTime >= 0) value = DiskCacheHelper.newByteArrayWithTime(saveTime, value);
-        File file = diskCacheManager.getFileBeforePut(key);
-        UtilsBridge.writeFileFromBytes(file, value);
-        diskCacheManager.updateModify(file);
-        diskCacheManager.put(file);
+        diskCacheManager.put(key, DiskCacheHelper.getDueTime(saveTime), value);
     }
 
 
@@ -237,15 +318,181 @@ public final class CacheDiskUtils implements CacheConstants {
     private byte[] realGetBytes(@NonNull final String key, final byte[] defaultValue) {
         DiskCacheManager diskCacheManager = getDiskCacheManager();
         if (diskCacheManager == null) return defaultValue;
-        final File file = diskCacheManager.getFileIfExists(key);
-        if (file == null) return defaultValue;
-        byte[] data = UtilsBridge.readFile2Bytes(file);
-        if (DiskCacheHelper.isDue(data)) {
-            diskCacheManager.removeByKey(key);
+        Record record = diskCacheManager.read(key);
+        if (record == null) return defaultValue;
+        if (record.isDue()) {
+            diskCacheManager.removeIfDue(key);
+            return defaultValue;
+        }
+        if (!DiskCacheHelper.isTypeOf(record, key)) {
+            Log.e("CacheDiskUtils", "type of " + key.substring(3) + " isn't " + key.substring(0, 3));
             return defaultValue;
         }
-        diskCacheManager.updateModify(file);
-        return DiskCacheHelper.getDataWithoutDueTime(data);
+        byte[] data = DiskCacheHelper.decode(record);
+        if (data == null) return defaultValue;
+        diskCacheManager.updateModify(key);
+        return data;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // about stream
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Put the content of stream in cache, it is copied through a fixed-size buffer so large values
+     * don't have to fit in memory. The stream isn't closed.
+     *
+     * @param key   The key of cache.
+     * @param value The value of cache.
+     */
+    public void put(@NonNull final String key, final InputStream value) {
+        put(key, value, -1);
+    }
+
+    /**
+     * Put the content of stream in cache, it is copied through a fixed-size buffer so large values
+     * don't have to fit in memory. The stream isn't closed.
+     *
+     * @param key      The key of cache.
+     * @param value    The value of cache.
+     * @param saveTime The save time of cache, in seconds.
+     */
+    public void put(@NonNull final String key, final InputStream value, final int saveTime) {
+        if (value == null) return;
+        Editor editor = edit(key, saveTime);
+        if (editor == null) return;
+        byte[] buffer = new byte[Editor.BUFFER_SIZE];
+        try {
+            int len;
+            while ((len = value.read(buffer)) != -1) {
+                editor.write(buffer, 0, len);
+            }
+            editor.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+            editor.abort();
+        }
+    }
+
+    /**
+     * Return the editor of the bytes in cache, the value is visible after the editor is closed.
+     *
+     * @param key The key of cache.
+     * @return the editor, null if it can't be created
+     */
+    public Editor edit(@NonNull final String key) {
+        return edit(key, -1);
+    }
+
+    /**
+     * Return the editor of the bytes in cache, the value is visible after the editor is closed.
+     *
+     * @param key      The key of cache.
+     * @param saveTime The save time of cache, in seconds.
+     * @return the editor, null if it can't be created
+     */
+    public Editor edit(@NonNull final String key, final int saveTime) {
+        DiskCacheManager diskCacheManager = getDiskCacheManager();
+        if (diskCacheManager == null) return null;
+        return diskCacheManager.edit(TYPE_BYTE + key, DiskCacheHelper.getDueTime(saveTime));
+    }
+
+    /**
+     * Return the stream of the bytes in cache, the value isn't loaded into memory.
+     *
+     * @param key The key of cache.
+     * @return the stream if cache exists or null otherwise
+     */
+    public InputStream openInputStream(@NonNull final String key) {
+        DiskCacheManager diskCacheManager = getDiskCacheManager();
+        if (diskCacheManager == null) return null;
+        FileChannel channel = diskCacheManager.openPayloadChannel(TYPE_BYTE + key);
+        if (channel != null) return Channels.newInputStream(channel);
+        // packed values are small, compressed ones were put from memory
+        byte[] bytes = realGetBytes(TYPE_BYTE + key);
+        return bytes == null ? null : new ByteArrayInputStream(bytes);
+    }
+
+    /**
+     * Return the read-only channel of the bytes in cache, positioned at the start of the value.
+     * <p>Values packed into segment files or compressed have no channel of their own.</p>
+     *
+     * @param key The key of cache.
+     * @return the channel if cache exists as a standalone file or null otherwise
+     */
+    public FileChannel openFileChannel(@NonNull final String key) {
+        DiskCacheManager diskCacheManager = getDiskCacheManager();
+        if (diskCacheManager == null) return null;
+        return diskCacheManager.openPayloadChannel(TYPE_BYTE + key);
+    }
+
+    /**
+     * Return a range of the bytes in cache, read at its offset without loading the value into
+     * memory, see {@link #read(String, ByteBuffer, long)}.
+     *
+     * @param key    The key of cache.
+     * @param offset The offset of the range in the value.
+     * @param length The length of the range.
+     * @return the bytes of the range, shorter if it passes the end of the value, null if cache
+     * doesn't exist
+     */
+    public byte[] read(@NonNull final String key, final long offset, final int length) {
+        ByteBuffer dst = ByteBuffer.allocate(length);
+        int read = realRead(key, dst, offset);
+        if (read == -2) return null;
+        if (read == length) return dst.array();
+        return Arrays.copyOf(dst.array(), Math.max(read, 0));
+    }
+
+    /**
+     * Read the bytes in cache from the offset into the buffer, as
+     * {@link FileChannel#read(ByteBuffer, long)} does, without loading the value into memory.
+     * <p>Values packed into segment files or compressed are read whole and then cut, for many
+     * reads of one value {@link #openFileChannel(String)} saves opening its file each time.</p>
+     *
+     * @param key    The key of cache.
+     * @param dst    The buffer into which the bytes are read.
+     * @param offset The offset in the value.
+     * @return the count of bytes read, -1 if the offset is at the end of the value or cache
+     * doesn't exist
+     */
+    public int read(@NonNull final String key, @NonNull final ByteBuffer dst, final long offset) {
+        return Math.max(realRead(key, dst, offset), -1);
+    }
+
+    /**
+     * @return the count of bytes read, -1 at the end of the value, -2 if cache doesn't exist
+     */
+    private int realRead(final String key, final ByteBuffer dst, final long offset) {
+        if (offset < 0) throw new IllegalArgumentException("offset < 0");
+        DiskCacheManager diskCacheManager = getDiskCacheManager();
+        if (diskCacheManager == null) return -2;
+        FileChannel channel = diskCacheManager.openPayloadChannel(TYPE_BYTE + key);
+        if (channel != null) {
+            try {
+                long position = channel.position() + offset;
+                if (position >= channel.size()) return -1;
+                int count = 0;
+                while (dst.hasRemaining()) {
+                    int read = channel.read(dst, position + count);
+                    if (read < 0) break;
+                    count += read;
+                }
+                return count;
+            } catch (IOException e) {
+                e.printStackTrace();
+                return -2;
+            } finally {
+                CloseUtils.closeIOQuietly(channel);
+            }
+        }
+        // packed values are small, compressed ones were put from memory
+        byte[] bytes = realGetBytes(TYPE_BYTE + key);
+        if (bytes == null) return -2;
+        if (offset >= bytes.length) return -1;
+        int count = (int) Math.min(dst.remaining(), bytes.length - offset);
+        dst.put(bytes, (int) offset, count);
+        return count;
     }
 
     ///////////////////////////////////////////////////////////////////////////
@@ -444,6 +691,55 @@ public final class CacheDiskUtils implements CacheConstants {
         return UtilsBridge.bytes2Bitmap(bytes);
     }
 
+    /**
+     * Put the pixels of bitmap in cache as they are, which skips the PNG encoding of
+     * {@link #put(String, Bitmap)}. Pixels are compressed with the fastest level if the instance
+     * has a codec.
+     *
+     * @param key   The key of cache.
+     * @param value The value of cache.
+     */
+    public void putRawBitmap(@NonNull final String key, final Bitmap value) {
+        putRawBitmap(key, value, -1);
+    }
+
+    /**
+     * Put the pixels of bitmap in cache as they are, which skips the PNG encoding of
+     * {@link #put(String, Bitmap)}. Pixels are compressed with the fastest level if the instance
+     * has a codec.
+     *
+     * @param key      The key of cache.
+     * @param value    The value of cache.
+     * @param saveTime The save time of cache, in seconds.
+     */
+    public void putRawBitmap(@NonNull final String key, final Bitmap value, final int saveTime) {
+        realPutBytes(TYPE_RAW_BITMAP + key, DiskCacheHelper.rawBitmap2Bytes(value), saveTime);
+    }
+
+    /**
+     * Return the bitmap put by {@link #putRawBitmap(String, Bitmap)}.
+     *
+     * @param key The key of cache.
+     * @return the bitmap if cache exists or null otherwise
+     */
+    public Bitmap getRawBitmap(@NonNull final String key) {
+        return getRawBitmap(key, null);
+    }
+
+    /**
+     * Return the bitmap put by {@link #putRawBitmap(String, Bitmap)}, decoded into the reusable
+     * bitmap if it is mutable and big enough.
+     *
+     * @param key   The key of cache.
+     * @param reuse The reusable bitmap, null to create a new one.
+     * @return the reused or a new bitmap if cache exists or null otherwise
+     */
+    public Bitmap getRawBitmap(@NonNull final String key, final Bitmap reuse) {
+        byte[] bytes = realGetBytes(TYPE_RAW_BITMAP + key);
+        if (bytes == null) return null;
+        return DiskCacheHelper.bytes2RawBitmap(bytes, reuse);
+    }
+
     ///////////////////////////////////////////////////////////////////////////
     // about Drawable
     ///////////////////////////////////////////////////////////////////////////
@@ -595,6 +891,287 @@ public final class CacheDiskUtils implements CacheConstants {
         return UtilsBridge.bytes2Object(bytes);
     }
 
+    ///////////////////////////////////////////////////////////////////////////
+    // about batch
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Put the values in cache, each one is put as the type of its class.
+     * <p>The journal is flushed once for the whole batch.</p>
+     *
+     * @param values The values of cache.
+     */
+    public void putAll(@NonNull final Map<String, ?> values) {
+        putAll(values, -1);
+    }
+
+    /**
+     * Put the values in cache, each one is put as the type of its class.
+     * <p>The journal is flushed once for the whole batch.</p>
+     *
+     * @param values   The values of cache.
+     * @param saveTime The save time of cache, in seconds.
+     */
+    public void putAll(@NonNull final Map<String, ?> values, final int saveTime) {
+        putAll(values, saveTime, new String[0]);
+    }
+
+    /**
+     * Return the values in cache.
+     *
+     * @param keys The keys of cache.
+     * @return the values of the keys which exist, see {@link #getAll(Collection, boolean)}
+     */
+    public Map<String, Object> getAll(@NonNull final Collection<String> keys) {
+        return getAll(keys, false);
+    }
+
+    /**
+     * Return the values in cache, each one as the type it was put. Parcelables and values put
+     * before types were stored are returned as bytes.
+     * <p>The usages of the hits are updated with one journal flush.</p>
+     *
+     * @param keys     The keys of cache.
+     * @param parallel True to read the files across the io pool.
+     * @return the values of the keys which exist
+     */
+    public Map<String, Object> getAll(@NonNull final Collection<String> keys, final boolean parallel) {
+        return getAll(keys, parallel, null);
+    }
+
+    /**
+     * Return the values in cache as {@link #getAll(Collection, boolean)} does.
+     *
+     * @param saveTimes The map to which the remaining save time of each value in seconds, -1 for
+     *                  ever, is put, except of the values returned as bytes for another type, null
+     *                  if not needed.
+     */
+    Map<String, Object> getAll(final Collection<String> keys,
+                               final boolean parallel,
+                               final Map<String, Integer> saveTimes) {
+        Map<String, Object> values = new HashMap<>();
+        DiskCacheManager diskCacheManager = getDiskCacheManager();
+        if (diskCacheManager == null || keys.isEmpty()) return values;
+        Map<String, Record> records = diskCacheManager.readAll(keys, parallel);
+        List<String> due = new ArrayList<>();
+        for (Map.Entry<String, Record> entry : records.entrySet()) {
+            Record record = entry.getValue();
+            if (record.isDue()) {
+                due.add(entry.getKey());
+                continue;
+            }
+            byte[] data = DiskCacheHelper.decode(record);
+            if (data == null) continue;
+            String type = DiskCacheHelper.getType(record.type);
+            Object value = bytes2Value(type, data);
+            if (value == null) continue;
+            values.put(entry.getKey(), value);
+            if (saveTimes != null && type != null && !TYPE_PARCELABLE.equals(type)) {
+                saveTimes.put(entry.getKey(), DiskCacheHelper.getSaveTime(record.dueTime));
+            }
+        }
+        if (!due.isEmpty()) diskCacheManager.removeAllIfDue(due);
+        if (!values.isEmpty()) diskCacheManager.updateModify(values.keySet());
+        return values;
+    }
+
+    /**
+     * Remove the cache by keys.
+     * <p>The journal is flushed once for the whole batch.</p>
+     *
+     * @param keys The keys of cache.
+     * @return {@code true}: success<br>{@code false}: fail
+     */
+    public boolean removeAll(@NonNull final Collection<String> keys) {
+        DiskCacheManager diskCacheManager = getDiskCacheManager();
+        if (diskCacheManager == null) return true;
+        return diskCacheManager.removeAll(keys);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // about key
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Return the keys in cache, see {@link #keysWithPrefix(String)}.
+     *
+     * @return the sorted keys
+     */
+    public List<String> keys() {
+        return keysWithPrefix("");
+    }
+
+    /**
+     * Return the keys in cache which start with the prefix, looked up in the sorted key index
+     * without touching the files. Keys of values put before keys were stored and the ones of the
+     * pack aren't listed.
+     *
+     * @param prefix The prefix of the keys.
+     * @return the sorted keys
+     */
+    public List<String> keysWithPrefix(@NonNull final String prefix) {
+        DiskCacheManager diskCacheManager = getDiskCacheManager();
+        if (diskCacheManager == null) return new ArrayList<>();
+        return diskCacheManager.keysWithPrefix(prefix);
+    }
+
+    /**
+     * Remove the cache of the keys which start with the prefix, see
+     * {@link #keysWithPrefix(String)}.
+     * <p>The journal is flushed once for the whole batch.</p>
+     *
+     * @param prefix The prefix of the keys.
+     * @return {@code true}: success<br>{@code false}: fail
+     */
+    public boolean removeByPrefix(@NonNull final String prefix) {
+        DiskCacheManager diskCacheManager = getDiskCacheManager();
+        if (diskCacheManager == null) return true;
+        return diskCacheManager.removeAll(diskCacheManager.keysWithPrefix(prefix));
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // about tag
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Put the value in cache with tags, it is put as the type of its class.
+     * <p>The tags replace the ones of the former value of the key, see
+     * {@link #invalidateTag(String)}.</p>
+     *
+     * @param key      The key of cache.
+     * @param value    The value of cache.
+     * @param saveTime The save time of cache, in seconds.
+     * @param tags     The tags of the value.
+     */
+    public void put(@NonNull final String key,
+                    final Object value,
+                    final int saveTime,
+                    @NonNull final String... tags) {
+        if (value == null) return;
+        putAll(Collections.singletonMap(key, value), saveTime, tags);
+    }
+
+    /**
+     * Put the values in cache with tags, each one is put as the type of its class.
+     * <p>The journal is flushed once for the whole batch.</p>
+     *
+     * @param values   The values of cache.
+     * @param saveTime The save time of cache, in seconds.
+     * @param tags     The tags of every value.
+     */
+    public void putAll(@NonNull final Map<String, ?> values,
+                       final int saveTime,
+                       @NonNull final String... tags) {
+        DiskCacheManager diskCacheManager = getDiskCacheManager();
+        if (diskCacheManager == null) return;
+        List<String> keys = new ArrayList<>(values.size());
+        List<byte[]> data = new ArrayList<>(values.size());
+        for (Map.Entry<String, ?> entry : values.entrySet()) {
+            Object value = entry.getValue();
+            if (value == null) continue;
+            String type = getType(value);
+            if (type == null) {
+                Log.e("CacheDiskUtils", "can't put " + value.getClass().getName() + " of " + entry.getKey());
+                continue;
+            }
+            byte[] bytes = value2Bytes(type, value);
+            if (bytes == null) continue;
+            keys.add(type + entry.getKey());
+            data.add(bytes);
+        }
+        diskCacheManager.putAll(keys, data, DiskCacheHelper.getDueTime(saveTime), DiskCacheHelper.getTags(tags));
+    }
+
+    /**
+     * Remove every value put with the tag.
+     * <p>The members are looked up in the tag index, the journal is flushed once for all of
+     * them.</p>
+     *
+     * @param tag The tag.
+     * @return {@code true}: success<br>{@code false}: fail
+     */
+    public boolean invalidateTag(@NonNull final String tag) {
+        DiskCacheManager diskCacheManager = getDiskCacheManager();
+        if (diskCacheManager == null) return true;
+        return diskCacheManager.invalidateTag(tag);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // about pack
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Write the values into a pack file, which an instance consults as a read-only tier beneath
+     * the cache, see {@link Config#setPack(File)}. Each value is stored as the type of its class.
+     * <p>Meant for seed data built ahead, e.g. into the assets, the file is replaced whole.</p>
+     * <p>pack: magic(4) + version(1) + reserved(3) + count(4), then the slots sorted by key:
+     * key offset(4) + key length(2) + type(1) + flags(1) + value offset(4) + value length(4),
+     * then the keys and the values, all offsets from the start of the file.</p>
+     *
+     * @param file   The pack file.
+     * @param values The values of the pack.
+     * @return {@code true}: success<br>{@code false}: fail
+     */
+    public static boolean buildPack(@NonNull final File file, @NonNull final Map<String, ?> values) {
+        List<String> keys = new ArrayList<>(values.size());
+        List<byte[]> data = new ArrayList<>(values.size());
+        for (Map.Entry<String, ?> entry : values.entrySet()) {
+            Object value = entry.getValue();
+            if (value == null) continue;
+            String type = getType(value);
+            if (type == null) {
+                Log.e("CacheDiskUtils", "can't pack " + value.getClass().getName() + " of " + entry.getKey());
+                continue;
+            }
+            byte[] bytes = value2Bytes(type, value);
+            if (bytes == null) continue;
+            keys.add(type + entry.getKey());
+            data.add(bytes);
+        }
+        return CachePack.write(file, keys, data);
+    }
+
+    /**
+     * Return the type prefix of the value, the subclasses go first, null if it can't be put.
+     */
+    private static String getType(final Object value) {
+        if (value instanceof byte[]) return TYPE_BYTE;
+        if (value instanceof String) return TYPE_STRING;
+        if (value instanceof JSONObject) return TYPE_JSON_OBJECT;
+        if (value instanceof JSONArray) return TYPE_JSON_ARRAY;
+        if (value instanceof Bitmap) return TYPE_BITMAP;
+        if (value instanceof Drawable) return TYPE_DRAWABLE;
+        if (value instanceof Parcelable) return TYPE_PARCELABLE;
+        if (value instanceof Serializable) return TYPE_SERIALIZABLE;
+        return null;
+    }
+
+    private static byte[] value2Bytes(final String type, final Object value) {
+        if (TYPE_BYTE.equals(type)) return (byte[]) value;
+        if (TYPE_STRING.equals(type)) return UtilsBridge.string2Bytes((String) value);
+        if (TYPE_JSON_OBJECT.equals(type)) return UtilsBridge.jsonObject2Bytes((JSONObject) value);
+        if (TYPE_JSON_ARRAY.equals(type)) return UtilsBridge.jsonArray2Bytes((JSONArray) value);
+        if (TYPE_BITMAP.equals(type)) return UtilsBridge.bitmap2Bytes((Bitmap) value);
+        if (TYPE_DRAWABLE.equals(type)) return UtilsBridge.drawable2Bytes((Drawable) value);
+        if (TYPE_PARCELABLE.equals(type)) return UtilsBridge.parcelable2Bytes((Parcelable) value);
+        return UtilsBridge.serializable2Bytes((Serializable) value);
+    }
+
+    /**
+     * Return the value of the bytes, the bytes themselves if the type is unknown or needs a
+     * creator.
+     */
+    private static Object bytes2Value(final String type, final byte[] bytes) {
+        if (TYPE_STRING.equals(type)) return UtilsBridge.bytes2String(bytes);
+        if (TYPE_JSON_OBJECT.equals(type)) return UtilsBridge.bytes2JSONObject(bytes);
+        if (TYPE_JSON_ARRAY.equals(type)) return UtilsBridge.bytes2JSONArray(bytes);
+        if (TYPE_BITMAP.equals(type)) return UtilsBridge.bytes2Bitmap(bytes);
+        if (TYPE_DRAWABLE.equals(type)) return UtilsBridge.bytes2Drawable(bytes);
+        if (TYPE_SERIALIZABLE.equals(type)) return UtilsBridge.bytes2Object(bytes);
+        if (TYPE_RAW_BITMAP.equals(type)) return DiskCacheHelper.bytes2RawBitmap(bytes, null);
+        return bytes;
+    }
+
     /**
      * Return the size of cache, in bytes.
      *
@@ -606,6 +1183,17 @@ public final class CacheDiskUtils implements CacheConstants {
         return diskCacheManager.getCacheSize();
     }
 
+    /**
+     * Return the statistics of lookups since the cache was opened.
+     *
+     * @return the statistics
+     */
+    public Stats getStats() {
+        DiskCacheManager diskCacheManager = getDiskCacheManager();
+        if (diskCacheManager == null) return new Stats(0, 0, 0, 0, 0);
+        return diskCacheManager.getStats();
+    }
+
     /**
      * Return the count of cache.
      *
@@ -626,14 +1214,19 @@ public final class CacheDiskUtils implements CacheConstants {
     public boolean remove(@NonNull final String key) {
         DiskCacheManager diskCacheManager = getDiskCacheManager();
         if (diskCacheManager == null) return true;
-        return diskCacheManager.removeByKey(TYPE_BYTE + key)
-                && diskCacheManager.removeByKey(TYPE_STRING + key)
-                && diskCacheManager.removeByKey(TYPE_JSON_OBJECT + key)
-                && diskCacheManager.removeByKey(TYPE_JSON_ARRAY + key)
-                && diskCacheManager.removeByKey(TYPE_BITMAP + key)
-                && diskCacheManager.removeByKey(TYPE_DRAWABLE + key)
-                && diskCacheManager.removeByKey(TYPE_PARCELABLE + key)
-                && diskCacheManager.removeByKey(TYPE_SERIALIZABLE + key);
+        return diskCacheManager.removeByKey(key);
+    }
+
+    /**
+     * Return whether the cache of key exists and isn't due, whatever its type.
+     *
+     * @param key The key of cache.
+     * @return {@code true}: yes<br>{@code false}: no
+     */
+    public boolean contains(@NonNull final String key) {
+        DiskCacheManager diskCacheManager = getDiskCacheManager();
+        if (diskCacheManager == null) return false;
+        return diskCacheManager.contains(key);
     }
 
     /**
@@ -647,193 +1240,4585 @@ public final class CacheDiskUtils implements CacheConstants {
         return diskCacheManager.clear();
     }
 
-    private static final class DiskCacheManager {
-        private final AtomicLong      cacheSize;
-        private final AtomicInteger   cacheCount;
-        private final long            sizeLimit;
-        private final int             countLimit;
-        private final Map<File, Long> lastUsageDates
-                = Collections.synchronizedMap(new HashMap<File, Long>());
-        private final File            cacheDir;
-        private final Thread          mThread;
-
-        private DiskCacheManager(final File cacheDir, final long sizeLimit, final int countLimit) {
-            this.cacheDir = cacheDir;
-            this.sizeLimit = sizeLimit;
-            this.countLimit = countLimit;
-            cacheSize = new AtomicLong();
-            cacheCount = new AtomicInteger();
-            mThread = new Thread(new Runnable() {
+    /**
+     * Invalidate all of the cache in O(1).
+     * <p>A new generation is started, the values put before are invisible at once and their files
+     * are reclaimed in background, unlike {@link #clear()} which deletes them before it returns.</p>
+     */
+    public void invalidateAll() {
+        DiskCacheManager diskCacheManager = getDiskCacheManager();
+        if (diskCacheManager == null) return;
+        diskCacheManager.invalidate();
+    }
+
+    /**
+     * Block until the values put before are written, a no-op without write-behind.
+     */
+    public void flush() {
+        DiskCacheManager diskCacheManager = getDiskCacheManager();
+        if (diskCacheManager == null) return;
+        diskCacheManager.flush();
+    }
+
+    /**
+     * The statistics of lookups. Once the index is loaded it answers every lookup, so a key which
+     * isn't in it is a definite miss and costs no file system access.
+     */
+    public static final class Stats {
+        private final long mLookupCount;
+        private final long mHitCount;
+        private final long mNegativeCount;
+        private final long mFalsePositiveCount;
+        private final long mRejectedCount;
+
+        private Stats(final long lookupCount,
+                      final long hitCount,
+                      final long negativeCount,
+                      final long falsePositiveCount,
+                      final long rejectedCount) {
+            mLookupCount = lookupCount;
+            mHitCount = hitCount;
+            mNegativeCount = negativeCount;
+            mFalsePositiveCount = falsePositiveCount;
+            mRejectedCount = rejectedCount;
+        }
+
+        /**
+         * Return the count of lookups.
+         */
+        public long getLookupCount() {
+            return mLookupCount;
+        }
+
+        /**
+         * Return the count of lookups which found a value which isn't due.
+         */
+        public long getHitCount() {
+            return mHitCount;
+        }
+
+        /**
+         * Return the rate of hits among the lookups.
+         */
+        public double getHitRate() {
+            return mLookupCount <= 0 ? 0 : (double) mHitCount / mLookupCount;
+        }
+
+        /**
+         * Return the count of puts rejected by the admission policy.
+         */
+        public long getRejectedCount() {
+            return mRejectedCount;
+        }
+
+        /**
+         * Return the count of lookups answered as misses by the index.
+         */
+        public long getNegativeCount() {
+            return mNegativeCount;
+        }
+
+        /**
+         * Return the count of lookups passed by the index whose value was missing on disk, e.g.
+         * removed meanwhile or deleted behind the cache.
+         */
+        public long getFalsePositiveCount() {
+            return mFalsePositiveCount;
+        }
+
+        /**
+         * Return the rate of false positives among the lookups passed by the index.
+         */
+        public double getFalsePositiveRate() {
+            long passed = mLookupCount - mNegativeCount;
+            return passed <= 0 ? 0 : (double) mFalsePositiveCount / passed;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{lookups=" + mLookupCount
+                    + ", hits=" + mHitCount
+                    + ", negatives=" + mNegativeCount
+                    + ", falsePositives=" + mFalsePositiveCount
+                    + ", rejected=" + mRejectedCount + "}";
+        }
+    }
+
+    /**
+     * The config of {@link CacheDiskUtils}.
+     */
+    public static final class Config {
+        private int             mPackedThreshold    = 0;              // The max size of values packed into segment files.
+        private Durability      mDurability         = null;           // The durability of write-behind, null to write synchronously.
+        private long            mFlushInterval      = 1000;           // The interval of Durability.FLUSH_ON_INTERVAL, in milliseconds.
+        private long            mMaxPendingSize     = 8L << 20;       // The max bytes of values queued for write-behind, 0 for no limit.
+        private boolean         mSyncPuts           = false;          // Whether synchronous puts are synced to the storage before they return.
+        private long            mSweepInterval      = 60000;          // The least interval of sweeping expired entries, in milliseconds.
+        private int             mSweepBudget        = 64;             // The max count of expired entries deleted per sweep.
+        private Codec           mCodec              = null;           // The codec of the values put, null to store them raw.
+        private int             mCompressThreshold  = 256;            // The min size of values to compress.
+        private int             mBudgetWeight       = 0;              // The weight in the global budget, 0 to stay out of it.
+        private boolean         mMultiProcess       = false;          // Whether the directory is shared with other processes.
+        private AdmissionPolicy mAdmissionPolicy    = null;           // The admission of new entries into a full cache, null to admit all.
+        private Layout          mLayout             = Layout.FLAT;    // The layout of the files in the cache directory.
+        private int             mDedupThreshold     = 0;              // The min size of values stored once by content, 0 to disable.
+        private long            mAdaptiveMinSize    = -1;             // The min size limit fitted to the free space, -1 for a fixed limit.
+        private long            mAdaptiveMaxSize    = Long.MAX_VALUE; // The max size limit fitted to the free space.
+        private long            mSpaceCheckInterval = 30000;          // The interval of fitting the size limit to the free space, in milliseconds.
+        private File            mPackFile           = null;           // The pack file beneath the cache, null if none.
+        private String          mPackAsset          = null;           // The pack asset beneath the cache, null if none.
+
+        /**
+         * Pack the values not bigger than the threshold into shared segment files instead of one
+         * file per value, bigger values are still stored as standalone files.
+         *
+         * @param packedThreshold The max size of packed values, in bytes, 0 to disable.
+         * @return the config
+         */
+        public Config setPackedThreshold(final int packedThreshold) {
+            mPackedThreshold = Math.max(packedThreshold, 0);
+            return this;
+        }
+
+        /**
+         * Write the values behind the callers: a put is visible to readers at once and written by a
+         * background writer, which coalesces overwrites of the same key and writes in batches.
+         * <p>The array passed to {@link #put(String, byte[])} must not be modified afterwards, call
+         * {@link #flush()} before the process goes away.</p>
+         *
+         * @param durability The durability of the written values, null to write synchronously.
+         * @return the config
+         */
+        public Config setWriteBehind(final Durability durability) {
+            mDurability = durability;
+            return this;
+        }
+
+        /**
+         * Set the interval of {@link Durability#FLUSH_ON_INTERVAL}.
+         *
+         * @param flushInterval The interval, in milliseconds.
+         * @return the config
+         */
+        public Config setFlushInterval(final long flushInterval) {
+            mFlushInterval = Math.max(flushInterval, 0);
+            return this;
+        }
+
+        /**
+         * Set the max bytes of the values queued by write-behind, a put which would go beyond it
+         * waits for the writer, so a burst of puts can't hold unbounded memory.
+         *
+         * @param maxPendingSize The max bytes, 0 for no limit.
+         * @return the config
+         */
+        public Config setMaxPendingSize(final long maxPendingSize) {
+            mMaxPendingSize = Math.max(maxPendingSize, 0);
+            return this;
+        }
+
+        /**
+         * Sync the values and the journal to the storage before a synchronous put returns, so
+         * they survive a power loss. Off by default: a sync costs milliseconds on flash, the
+         * values survive the process anyway. Values written behind follow their
+         * {@link Durability}.
+         *
+         * @param syncPuts True to sync each put, false to leave syncing to the system.
+         * @return the config
+         */
+        public Config setSyncPuts(final boolean syncPuts) {
+            mSyncPuts = syncPuts;
+            return this;
+        }
+
+        /**
+         * Set the least interval of sweeping expired entries in background, so they stop taking the
+         * room of live entries before being read. A sweep runs once the earliest entry is due, none
+         * runs while no entry expires.
+         *
+         * @param sweepInterval The least interval, in milliseconds, 0 to sweep on read only.
+         * @return the config
+         */
+        public Config setSweepInterval(final long sweepInterval) {
+            mSweepInterval = Math.max(sweepInterval, 0);
+            return this;
+        }
+
+        /**
+         * Set the max count of expired entries deleted per sweep, the rest is left to the next one.
+         *
+         * @param sweepBudget The max count.
+         * @return the config
+         */
+        public Config setSweepBudget(final int sweepBudget) {
+            mSweepBudget = Math.max(sweepBudget, 1);
+            return this;
+        }
+
+        /**
+         * Compress the values put from now on, the codec is recorded per entry so values written
+         * with another codec or none are still read. Values which don't compress are stored raw,
+         * and streamed values are never compressed.
+         *
+         * @param codec The codec, null to store values raw.
+         * @return the config
+         */
+        public Config setCodec(final Codec codec) {
+            mCodec = codec;
+            return this;
+        }
+
+        /**
+         * Set the min size of values to compress, smaller ones are stored raw.
+         *
+         * @param compressThreshold The min size, in bytes.
+         * @return the config
+         */
+        public Config setCompressThreshold(final int compressThreshold) {
+            mCompressThreshold = Math.max(compressThreshold, 0);
+            return this;
+        }
+
+        /**
+         * Join the global budget set by {@link #setGlobalMaxSize(long)}. The entry evicted for it
+         * is the one whose idle time divided by the weight of its instance is the longest, so an
+         * instance of weight 2 keeps its entries twice as long as one of weight 1.
+         *
+         * @param budgetWeight The weight, 0 to stay out of the global budget.
+         * @return the config
+         */
+        public Config setBudgetWeight(final int budgetWeight) {
+            mBudgetWeight = Math.max(budgetWeight, 0);
+            return this;
+        }
+
+        /**
+         * Share the cache directory with the other processes of the app, every process has to
+         * open it with this mode. The index of each process follows the journal appended by all
+         * of them under a file lock, so they share one accounting and eviction order. Renames and
+         * deletes happen under the lock too, and reads catch up with the other processes first.
+         * <p>Values aren't packed into segment files in this mode.</p>
+         *
+         * @param multiProcess True to share the directory with other processes.
+         * @return the config
+         */
+        public Config setMultiProcess(final boolean multiProcess) {
+            mMultiProcess = multiProcess;
+            return this;
+        }
+
+        /**
+         * Set the policy deciding whether a new entry is worth evicting the least recently used
+         * one once the cache is full, so a one-off scan doesn't flush the entries used often.
+         * Overwrites are always admitted, and so are the values streamed by an {@link Editor}.
+         * <p>A policy keeps the state of one instance, don't share it.</p>
+         *
+         * @param admissionPolicy The policy, null to admit every entry.
+         * @return the config
+         */
+        public Config setAdmissionPolicy(final AdmissionPolicy admissionPolicy) {
+            mAdmissionPolicy = admissionPolicy;
+            return this;
+        }
+
+        /**
+         * Set the layout of the files in the cache directory. The entries put with the flat
+         * layout are moved to the fan-out one when their keys are read, or evicted as usual.
+         *
+         * @param layout The layout.
+         * @return the config
+         */
+        public Config setLayout(@NonNull final Layout layout) {
+            mLayout = layout;
+            return this;
+        }
+
+        /**
+         * Store the standalone values not smaller than the threshold once by the hash of their
+         * content, the keys of equal values then refer to one payload file which is deleted with
+         * its last reference. Ignored in multi-process mode.
+         * <p>The size of the cache still counts each value in full.</p>
+         *
+         * @param dedupThreshold The min size of deduplicated values, in bytes, 0 to disable.
+         * @return the config
+         */
+        public Config setDedupThreshold(final int dedupThreshold) {
+            mDedupThreshold = Math.max(dedupThreshold, 0);
+            return this;
+        }
+
+        /**
+         * Fit the size limit to the free space of the storage instead of keeping it fixed: the
+         * cache may take half of the space it could grow into while a tenth of the storage stays
+         * free, within the bounds. It is fitted again periodically, and the cache is trimmed at
+         * once when the free space shrinks.
+         * <p>The max size of the instance still caps it.</p>
+         *
+         * @param minSize The min size limit, in bytes.
+         * @param maxSize The max size limit, in bytes.
+         * @return the config
+         */
+        public Config setAdaptiveSize(final long minSize, final long maxSize) {
+            mAdaptiveMinSize = Math.max(minSize, 0);
+            mAdaptiveMaxSize = Math.max(maxSize, mAdaptiveMinSize);
+            return this;
+        }
+
+        /**
+         * Set the interval of fitting the size limit to the free space, see
+         * {@link #setAdaptiveSize(long, long)}.
+         *
+         * @param spaceCheckInterval The interval, in milliseconds.
+         * @return the config
+         */
+        public Config setSpaceCheckInterval(final long spaceCheckInterval) {
+            mSpaceCheckInterval = Math.max(spaceCheckInterval, 1);
+            return this;
+        }
+
+        /**
+         * Consult the pack file built by {@link CacheDiskUtils#buildPack(File, Map)} on misses, as
+         * a read-only tier beneath the cache. It is memory-mapped on the first miss and looked up
+         * by binary search on its sorted keys, nothing is parsed ahead.
+         * <p>Values put shadow the ones of the pack, which show again once removed.</p>
+         *
+         * @param packFile The pack file.
+         * @return the config
+         */
+        public Config setPack(@NonNull final File packFile) {
+            mPackFile = packFile;
+            mPackAsset = null;
+            return this;
+        }
+
+        /**
+         * Consult the pack in the assets on misses, see {@link #setPack(File)}. Keep the asset
+         * uncompressed, e.g. by noCompress of aaptOptions, or it is read into memory instead of
+         * being mapped.
+         *
+         * @param packAsset The path of the pack in the assets.
+         * @return the config
+         */
+        public Config setPackAsset(@NonNull final String packAsset) {
+            mPackAsset = packAsset;
+            mPackFile = null;
+            return this;
+        }
+    }
+
+    /**
+     * The codec of the values stored.
+     */
+    public enum Codec {
+        /**
+         * Deflate, which suits text such as JSON.
+         */
+        DEFLATE
+    }
+
+    /**
+     * The layout of the files in the cache directory.
+     */
+    public enum Layout {
+        /**
+         * One directory, files named by the 32-bit hash of their keys. Keys of the same hash
+         * share one entry, the key stored in it tells which one it holds.
+         */
+        FLAT,
+        /**
+         * Files named by the 128-bit digest of their keys, spread over two levels of 256
+         * directories named by the first bytes of the digest, so no directory grows too big to
+         * list or look up fast.
+         */
+        FAN_OUT
+    }
+
+    /**
+     * The durability of the values written behind.
+     */
+    public enum Durability {
+        /**
+         * Write as soon as possible and leave syncing to the system.
+         */
+        NONE,
+        /**
+         * Write once per flush interval, so more overwrites coalesce, the files and the journal
+         * are synced once per interval.
+         */
+        FLUSH_ON_INTERVAL,
+        /**
+         * Write as soon as possible, the files and the journal are synced before the batch is done.
+         */
+        FSYNC_PER_BATCH
+    }
+
+    /**
+     * The policy admitting new entries into a full cache. The keys are the names of the entries,
+     * the methods are called from any thread.
+     */
+    public interface AdmissionPolicy {
+
+        /**
+         * Record a lookup of the key, a miss followed by a put counts once.
+         *
+         * @param key The key of the entry.
+         */
+        void record(String key);
+
+        /**
+         * Return whether the candidate is admitted, which evicts the victim.
+         *
+         * @param candidate The key of the new entry.
+         * @param victim    The key of the least recently used entry.
+         * @return {@code true}: admit<br>{@code false}: reject
+         */
+        boolean admit(String candidate, String victim);
+    }
+
+    /**
+     * The TinyLFU admission, the candidate is admitted if it was accessed more often than the
+     * victim lately. The frequencies are estimated by a count-min sketch of 4 rows of 4-bit
+     * counters, which are halved once the sample size of accesses is reached so old popularity
+     * fades.
+     */
+    public static final class TinyLfu implements AdmissionPolicy {
+        private static final int[] SEEDS = {0x97cb3127, 0xb4b82e9f, 0x8bb4d7a5, 0xf6e27b2d};
+
+        private final byte[] mTable; // Two counters per byte, the even one in the low nibble.
+        private final int    mMask;
+        private final int    mSampleSize;
+        private       int    mAdditions;
+
+        /**
+         * @param expectedCount The count of entries expected in the cache.
+         */
+        public TinyLfu(final int expectedCount) {
+            int width = Integer.highestOneBit(Math.max(Math.min(expectedCount, 1 << 24), 16) - 1) << 1;
+            mTable = new byte[width * SEEDS.length / 2];
+            mMask = width - 1;
+            mSampleSize = width * 10;
+        }
+
+        @Override
+        public synchronized void record(final String key) {
+            final int hash = key.hashCode();
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; i++) {
+                int index = indexOf(hash, i);
+                if (counterAt(index) < 15) {
+                    mTable[index >>> 1] += 1 << ((index & 1) << 2);
+                    added = true;
+                }
+            }
+            if (added && ++mAdditions >= mSampleSize) reset();
+        }
+
+        @Override
+        public synchronized boolean admit(final String candidate, final String victim) {
+            return frequencyOf(candidate) > frequencyOf(victim);
+        }
+
+        /**
+         * Return the estimated count of accesses to the key, at most 15.
+         */
+        public synchronized int frequencyOf(final String key) {
+            final int hash = key.hashCode();
+            int frequency = 15;
+            for (int i = 0; i < SEEDS.length; i++) {
+                frequency = Math.min(frequency, counterAt(indexOf(hash, i)));
+            }
+            return frequency;
+        }
+
+        private int indexOf(final int hash, final int row) {
+            int h = hash * SEEDS[row];
+            h ^= h >>> 16;
+            return row * (mMask + 1) + (h & mMask);
+        }
+
+        private int counterAt(final int index) {
+            return (mTable[index >>> 1] >>> ((index & 1) << 2)) & 0xF;
+        }
+
+        private void reset() {
+            for (int i = 0; i < mTable.length; i++) {
+                // halve both nibbles, the bit shifted across them is masked off
+                mTable[i] = (byte) ((mTable[i] & 0xFF) >>> 1 & 0x77);
+            }
+            mAdditions >>= 1;
+        }
+    }
+
+    /**
+     * The stream writing a value of {@link CacheDiskUtils}, the value is published when it is
+     * closed, or discarded by {@link #abort()}.
+     */
+    public static final class Editor extends OutputStream {
+        private static final int BUFFER_SIZE = 8192;
+
+        private final DiskCacheManager mManager;
+        private final String           mName;
+        private final String           mKey;
+        private final long             mDueTime;
+        private final File             mTmp;
+        private final FileOutputStream mFos;
+        private final OutputStream     mOut;
+        private       long             mLength;
+        private       boolean          mFailed;
+        private       boolean          mClosed;
+
+        private Editor(final DiskCacheManager manager,
+                       final String name,
+                       final String key,
+                       final byte type,
+                       final long dueTime,
+                       final File tmp) throws IOException {
+            mManager = manager;
+            mName = name;
+            mKey = key;
+            mDueTime = dueTime;
+            mTmp = tmp;
+            mFos = new FileOutputStream(tmp);
+            mOut = new BufferedOutputStream(mFos, BUFFER_SIZE);
+            // the length is patched on close
+            mOut.write(DiskCacheHelper.newHeader(key, type, (byte) 0, dueTime, 0).array());
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            try {
+                mOut.write(b);
+                mLength++;
+            } catch (IOException e) {
+                mFailed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public void write(@NonNull final byte[] b, final int off, final int len) throws IOException {
+            try {
+                mOut.write(b, off, len);
+                mLength += len;
+            } catch (IOException e) {
+                mFailed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            mOut.flush();
+        }
+
+        /**
+         * Publish the value, nothing is published if a write failed.
+         */
+        @Override
+        public void close() throws IOException {
+            if (mClosed) return;
+            mClosed = true;
+            try {
+                if (!mFailed) {
+                    mOut.flush();
+                    ByteBuffer length = ByteBuffer.allocate(8);
+                    length.putLong(0, mLength);
+                    mFos.getChannel().write(length, DiskCacheHelper.LENGTH_OFFSET);
+                    if (mManager.syncPuts) mFos.getChannel().force(true);
+                }
+            } catch (IOException e) {
+                mFailed = true;
+                throw e;
+            } finally {
+                CloseUtils.closeIOQuietly(mOut);
+                if (mFailed) mTmp.delete();
+            }
+            if (!mManager.commit(mName, mKey, mTmp, mDueTime)) {
+                throw new IOException("can't commit " + mName);
+            }
+        }
+
+        /**
+         * Discard the value.
+         */
+        public void abort() {
+            if (mClosed) return;
+            mClosed = true;
+            CloseUtils.closeIOQuietly(mOut);
+            mTmp.delete();
+        }
+    }
+
+    private static final class DiskCacheManager {
+        private static final int        LOCK_STRIPES    = 64;
+        private static final double     LOW_SPACE_RATIO = 0.1; // The share of the storage a fitted size limit leaves free.
+        private static final AtomicLong EDITOR_ID       = new AtomicLong();
+        private static final Timer      SWEEPER         = new Timer("CacheDiskUtils-sweeper", true);
+
+        private static final Comparator<Entry> EXPIRY_ORDER = new Comparator<Entry>() {
+            @Override
+            public int compare(Entry o1, Entry o2) {
+                return o1.dueTime < o2.dueTime ? -1 : (o1.dueTime == o2.dueTime ? 0 : 1);
+            }
+        };
+
+        private final AtomicLong          cacheSize;
+        private final AtomicInteger       cacheCount;
+        private volatile long             sizeLimit;
+        private final long                maxSizeLimit; // The size limit of the instance, the bound of a fitted one.
+        private final long                minSizeLimit; // The min fitted size limit, -1 for a fixed one.
+        private final int                 countLimit;
+        private       Map<String, Entry>  entries = newLruIndex();
+        private final File                cacheDir;
+        private final DiskJournal         journal;
+        private final SegmentStore        segments;
+        private final int                 packedThreshold;
+        private final boolean             multiProcess;
+        private final String              tmpPrefix;
+        private final Durability          durability;
+        private final long                flushInterval;
+        private final boolean             syncPuts;
+        private final Codec               codec;
+        private final int                 compressThreshold;
+        private final Map<String, Pending> pending = new LinkedHashMap<>();
+        private       long                pendingSize;
+        private final long                maxPendingSize;
+        private       long                enqueuedSeq;
+        private       long                flushedSeq;
+        private       boolean             flushRequested;
+        private       boolean             writing;
+        private final Thread              mThread;
+        private       Set<String>         touchedWhileLoading = new HashSet<>();
+        private final Map<String, String> flatWhileLoading = new HashMap<>(); // The keys of the flat entries to remove once loaded, by flat name.
+        private volatile boolean          indexLoaded;
+        private volatile boolean          loadingStale; // Whether files of invalidated entries may be left, reads wait for the index then.
+        private       boolean             invalidatedWhileLoading; // Whether the replayed entries are stale once loaded.
+        private final ReentrantLock[]     keyLocks = new ReentrantLock[LOCK_STRIPES];
+        private final PriorityQueue<Entry> expiries = new PriorityQueue<>(11, EXPIRY_ORDER);
+        private final int                 sweepBudget;
+        private final long                sweepInterval;
+        private       TimerTask           sweepTask; // The pending sweep, null if none, guarded by the monitor.
+        private       long                sweepTime; // The time the pending sweep runs at.
+        private       long                lastSweep; // The time the last sweep ran at.
+        private       boolean             closed;
+        private final TimerTask           spaceTask;
+        private final AtomicBoolean       checkingSpace = new AtomicBoolean();
+        private final int                 budgetWeight;
+        private final AtomicBoolean       sweeping = new AtomicBoolean();
+        private final AtomicLong          lookupCount = new AtomicLong();
+        private final AtomicLong          negativeCount = new AtomicLong();
+        private final AtomicLong          falsePositiveCount = new AtomicLong();
+        private final AtomicLong          hitCount = new AtomicLong();
+        private final AtomicLong          rejectedCount = new AtomicLong();
+        private final AdmissionPolicy     admission;
+        private final boolean             fanOut;
+        private final List<Collection<Entry>> stale = new ArrayList<>(); // The entries of former generations.
+        private final AtomicBoolean       reclaiming = new AtomicBoolean();
+        private final Map<String, List<Entry>> tagIndex = new HashMap<>();
+        private       int                 taggedCount;
+        private final TreeMap<String, Entry> keyIndex = new TreeMap<>(); // The entries by key, sorted.
+        private final int                 dedupThreshold;
+        private final File                blobDir;
+        private final Map<String, Integer> blobRefs = new HashMap<>(); // The references to each payload, by its hash.
+        private final File                packFile;
+        private final String              packAsset;
+        private volatile CachePack        pack; // The tier beneath the cache, opened on the first miss.
+        private final Object              packLock = new Object();
+
+        private DiskCacheManager(final File cacheDir,
+                                 final long sizeLimit,
+                                 final int countLimit,
+                                 final Config config) {
+            this.cacheDir = cacheDir;
+            this.sizeLimit = sizeLimit;
+            this.countLimit = countLimit;
+            maxSizeLimit = Math.min(sizeLimit, config.mAdaptiveMaxSize);
+            minSizeLimit = Math.min(config.mAdaptiveMinSize, maxSizeLimit);
+            cacheSize = new AtomicLong();
+            cacheCount = new AtomicInteger();
+            journal = new DiskJournal(cacheDir);
+            loadingStale = journal.hasStale();
+            multiProcess = config.mMultiProcess;
+            if (multiProcess) journal.openLock();
+            // segments are appended by one process only
+            packedThreshold = multiProcess ? 0 : config.mPackedThreshold;
+            // tmp files of other processes are left alone
+            tmpPrefix = multiProcess ? TEMP_PREFIX + Process.myPid() + "_" : TEMP_PREFIX;
+            segments = packedThreshold > 0 ? new SegmentStore(cacheDir) : null;
+            durability = config.mDurability;
+            flushInterval = config.mFlushInterval;
+            maxPendingSize = config.mMaxPendingSize;
+            syncPuts = config.mSyncPuts;
+            codec = config.mCodec;
+            compressThreshold = config.mCompressThreshold;
+            admission = config.mAdmissionPolicy;
+            fanOut = config.mLayout == Layout.FAN_OUT;
+            // another process can't see the references of this one
+            dedupThreshold = multiProcess ? 0 : config.mDedupThreshold;
+            blobDir = new File(cacheDir, BLOB_DIR);
+            packFile = config.mPackFile;
+            packAsset = config.mPackAsset;
+            if (durability != null) {
+                Thread writer = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        runWriter();
+                    }
+                }, "CacheDiskUtils-writer");
+                writer.setDaemon(true);
+                writer.start();
+            }
+            for (int i = 0; i < LOCK_STRIPES; i++) {
+                keyLocks[i] = new ReentrantLock();
+            }
+            sweepBudget = config.mSweepBudget;
+            sweepInterval = config.mSweepInterval;
+            lastSweep = System.currentTimeMillis();
+            if (minSizeLimit >= 0) {
+                fitSizeLimit();
+                spaceTask = new TimerTask() {
+                    @Override
+                    public void run() {
+                        scheduleSpaceCheck();
+                    }
+                };
+                SWEEPER.schedule(spaceTask, config.mSpaceCheckInterval, config.mSpaceCheckInterval);
+            } else {
+                spaceTask = null;
+            }
+            budgetWeight = config.mBudgetWeight;
+            if (budgetWeight > 0) GlobalBudget.join(this);
+            mThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    if (multiProcess) {
+                        loadShared();
+                        return;
+                    }
+                    List<Collection<Entry>> staleLoaded = new ArrayList<>();
+                    Map<String, Entry> loaded = journal.read(staleLoaded);
+                    boolean rebuild = loaded == null;
+                    if (rebuild) {
+                        loaded = scanCacheDir();
+                        staleLoaded.clear();
+                    }
+                    rebuild |= recoverKeys(loaded);
+                    Map<String, Entry> migrated = migrateTypedNames(loaded);
+                    onLoaded(migrated, staleLoaded, rebuild || migrated != loaded);
+                }
+            });
+            mThread.start();
+        }
+
+        /**
+         * Used when there is no usable journal, e.g. the first launch after upgrading.
+         */
+        private Map<String, Entry> scanCacheDir() {
+            List<String> names = listCacheNames();
+            Map<String, Entry> loaded = newLruIndex();
+            List<Entry> scanned = new ArrayList<>(names.size());
+            boolean hasBlobs = blobDir.isDirectory();
+            for (String name : names) {
+                File cachedFile = new File(cacheDir, name);
+                String blob = hasBlobs ? readBlobRef(cachedFile) : null;
+                long size = cachedFile.length() + (blob == null ? 0 : new File(blobDir, blob).length());
+                Entry entry = new Entry(name, size, cachedFile.lastModified(), -1);
+                entry.blob = blob;
+                scanned.add(entry);
+            }
+            Collections.sort(scanned, new Comparator<Entry>() {
+                @Override
+                public int compare(Entry o1, Entry o2) {
+                    return o1.lastUsage < o2.lastUsage ? -1 : (o1.lastUsage == o2.lastUsage ? 0 : 1);
+                }
+            });
+            for (Entry entry : scanned) {
+                loaded.put(entry.name, entry);
+            }
+            return loaded;
+        }
+
+        /**
+         * Read the keys of the entries the journal has none of from the headers of their files,
+         * e.g. of the entries put before the journal stored keys. A file which stores no key is
+         * marked, so it is read once.
+         *
+         * @return {@code true}: some key was read or found missing<br>{@code false}: otherwise
+         */
+        private boolean recoverKeys(final Map<String, Entry> loaded) {
+            boolean recovered = false;
+            for (Entry entry : loaded.values()) {
+                if (entry.key != null || entry.keyless) continue;
+                File file = entry.segment < 0
+                        ? new File(cacheDir, entry.name)
+                        : SegmentStore.getSegmentFile(cacheDir, entry.segment);
+                if (!file.exists()) continue;
+                FileChannel fc = null;
+                try {
+                    fc = new RandomAccessFile(file, "r").getChannel();
+                    Record header = entry.segment < 0
+                            ? DiskCacheHelper.readHeader(fc)
+                            : DiskCacheHelper.readRecord(fc, entry.offset, entry.size);
+                    if (header != null) {
+                        entry.key = header.key;
+                        entry.keyless = header.key == null;
+                        recovered = true;
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                } finally {
+                    CloseUtils.closeIOQuietly(fc);
+                }
+            }
+            return recovered;
+        }
+
+        /**
+         * Return the index ordered from least to most recently used, so the eldest entry is the
+         * next one to evict. Entries are moved to the tail by {@link #touch(Entry)}, so
+         * {@link Map#get(Object)} is a plain lookup.
+         */
+        private static Map<String, Entry> newLruIndex() {
+            return new LinkedHashMap<>();
+        }
+
+        private void touch(final Entry entry) {
+            entries.remove(entry.name);
+            entries.put(entry.name, entry);
+        }
+
+        private synchronized void onLoaded(final Map<String, Entry> loaded,
+                                           final List<Collection<Entry>> staleLoaded,
+                                           boolean rebuild) {
+            for (Map.Entry<String, String> flat : flatWhileLoading.entrySet()) {
+                Entry entry = loaded.get(flat.getKey());
+                // the keys were recovered while loading, an entry without one is of any key
+                if (entry != null && (entry.key == null || entry.key.equals(flat.getValue()))) {
+                    touchedWhileLoading.add(entry.name);
+                }
+            }
+            flatWhileLoading.clear();
+            // replayed entries are older than the ones touched while loading
+            Map<String, Entry> merged = newLruIndex();
+            for (Entry entry : invalidatedWhileLoading ? Collections.<Entry>emptyList() : loaded.values()) {
+                // the live operation wins over the replayed state
+                if (touchedWhileLoading.contains(entry.name)) continue;
+                merged.put(entry.name, entry);
+                cacheSize.addAndGet(entry.size);
+                cacheCount.addAndGet(1);
+                if (entry.blob != null) linkBlob(entry.blob);
+            }
+            merged.putAll(entries);
+            entries = merged;
+            if (invalidatedWhileLoading) {
+                // the generation was bumped while loading, the replayed one is the oldest
+                stale.add(0, loaded.values());
+                for (Entry entry : loaded.values()) {
+                    if (entry.blob != null) linkBlob(entry.blob);
+                }
+                rebuild = true;
+            }
+            stale.addAll(staleLoaded);
+            for (Collection<Entry> generation : staleLoaded) {
+                for (Entry entry : generation) {
+                    if (entry.blob != null) linkBlob(entry.blob);
+                }
+            }
+            dropUnreadableSegments();
+            rebuildExpiries();
+            rebuildTags();
+            rebuildKeys();
+            if (rebuild || journal.isRebuildRequired(entries.size())) {
+                rebuildJournal();
+            } else {
+                journal.open();
+                for (String name : touchedWhileLoading) {
+                    Entry entry = entries.get(name);
+                    if (entry != null) {
+                        journal.writeClean(entry);
+                    } else {
+                        journal.writeRemove(name);
+                    }
+                }
+            }
+            touchedWhileLoading = null;
+            indexLoaded = true;
+            scheduleSweepAtDue();
+            // the room the cache could grow into counts what it holds, known only now
+            if (minSizeLimit >= 0) fitSizeLimit();
+            trimToLimit();
+            if (budgetWeight > 0) GlobalBudget.scheduleTrim();
+            if (segments != null) {
+                for (Long segmentId : segments.getCompactionCandidates()) {
+                    scheduleCompaction(segmentId);
+                }
+            }
+            scheduleReclaim();
+            // files of other processes may be missing from the index for a while
+            if (!multiProcess) {
+                ThreadUtils.getIoPool().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        collectStrays();
+                    }
+                });
+            }
+            if (blobDir.isDirectory()) {
+                ThreadUtils.getIoPool().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        collectBlobs();
+                    }
+                });
+            }
+        }
+
+        /**
+         * Delete the files the index doesn't know, left by a crash between renaming a tmp file and
+         * journaling it, so they can't come back when the journal is lost.
+         */
+        private void collectStrays() {
+            for (String name : listCacheNames()) {
+                // renamed by migrateTypedNames
+                if (isTypedName(name)) continue;
+                ReentrantLock lock = getKeyLock(name);
+                lock.lock();
+                try {
+                    boolean stray;
+                    synchronized (this) {
+                        // the file of an invalidated entry goes either way
+                        Entry live = entries.get(name);
+                        stray = live == null || live.segment >= 0;
+                    }
+                    if (stray) new File(cacheDir, name).delete();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        /**
+         * Open the segments referenced by the index, the entries of missing segments or of a
+         * cache opened without packed mode are dropped.
+         */
+        private void dropUnreadableSegments() {
+            Set<Long> missing = null;
+            if (segments != null) {
+                // stale entries keep their bytes in the segments until they are reclaimed
+                List<Entry> referenced = new ArrayList<>(entries.values());
+                for (Collection<Entry> generation : stale) {
+                    referenced.addAll(generation);
+                }
+                missing = segments.load(referenced);
+            }
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (entry.segment < 0) continue;
+                if (missing != null && !missing.contains(entry.segment)) continue;
+                iterator.remove();
+                cacheSize.addAndGet(-entry.size);
+                cacheCount.addAndGet(-1);
+                if (missing == null) SegmentStore.getSegmentFile(cacheDir, entry.segment).delete();
+            }
+        }
+
+        /**
+         * Stop the background work of a manager which is replaced, e.g. after its directory was
+         * deleted behind it.
+         */
+        private void close() {
+            synchronized (this) {
+                closed = true;
+                cancelSweep();
+            }
+            if (spaceTask != null) spaceTask.cancel();
+            if (budgetWeight > 0) GlobalBudget.leave(this);
+        }
+
+        /**
+         * Load under the lock shared with the other processes, so no line is appended meanwhile.
+         */
+        private synchronized void loadShared() {
+            journal.lock();
+            try {
+                List<Collection<Entry>> staleLoaded = new ArrayList<>();
+                Map<String, Entry> loaded = journal.read(staleLoaded);
+                boolean rebuild = loaded == null;
+                if (rebuild) {
+                    loaded = scanCacheDir();
+                    staleLoaded.clear();
+                }
+                rebuild |= recoverKeys(loaded);
+                Map<String, Entry> migrated = migrateTypedNames(loaded);
+                onLoaded(migrated, staleLoaded, rebuild || migrated != loaded);
+            } finally {
+                journal.unlock();
+            }
+        }
+
+        /**
+         * Take the journal lock shared with the other processes and apply the lines they appended
+         * since, the caller holds the monitor so the threads of this process never contend for it.
+         *
+         * @return {@code true}: locked, call {@link #unlockShared()}<br>{@code false}: no need to lock
+         */
+        private boolean lockShared() {
+            if (!multiProcess || !indexLoaded) return false;
+            List<String> lines = journal.lock();
+            if (lines == null) {
+                reloadShared();
+            } else {
+                for (String line : lines) {
+                    applyShared(line);
+                }
+            }
+            return true;
+        }
+
+        private void unlockShared() {
+            journal.unlock();
+        }
+
+        /**
+         * Catch up with the other processes if they appended to the journal, used before answering
+         * from the index.
+         */
+        private void refreshShared() {
+            if (!multiProcess || !indexLoaded || !journal.isStale()) return;
+            synchronized (this) {
+                if (lockShared()) unlockShared();
+            }
+        }
+
+        /**
+         * Replace the index by the journal another process rebuilt, the caller holds the lock.
+         */
+        private void reloadShared() {
+            List<Collection<Entry>> staleLoaded = new ArrayList<>();
+            Map<String, Entry> loaded = journal.read(staleLoaded);
+            if (loaded == null) {
+                loaded = scanCacheDir();
+                staleLoaded.clear();
+                recoverKeys(loaded);
+                journal.rebuild(Collections.<Entry>emptyList(), loaded.values());
+            }
+            long size = 0;
+            for (Entry entry : loaded.values()) {
+                size += entry.size;
+            }
+            entries = loaded;
+            cacheSize.set(size);
+            cacheCount.set(loaded.size());
+            rebuildExpiries();
+            scheduleSweepAtDue();
+            rebuildTags();
+            rebuildKeys();
+            stale.clear();
+            stale.addAll(staleLoaded);
+            scheduleReclaim();
+        }
+
+        /**
+         * Apply a line appended by another process, the caller holds the lock.
+         */
+        private void applyShared(final String line) {
+            if (DiskJournal.isInvalidate(line)) {
+                invalidateIndex();
+                scheduleReclaim();
+                return;
+            }
+            int start = line.indexOf(' ') + 1;
+            if (start == 0) return;
+            int end = line.indexOf(' ', start);
+            String name = end < 0 ? line.substring(start) : line.substring(start, end);
+            Entry before = entries.get(name);
+            if (!DiskJournal.readLine(line, entries)) return;
+            Entry after = entries.get(name);
+            if (before == after) {
+                if (after != null && DiskJournal.isTag(line)) indexTags(after);
+                if (after != null && DiskJournal.isKey(line)) indexKey(after);
+                return;
+            }
+            if (before != null) {
+                cacheSize.addAndGet(-before.size);
+                cacheCount.addAndGet(-1);
+            }
+            if (after != null) {
+                cacheSize.addAndGet(after.size);
+                cacheCount.addAndGet(1);
+                indexExpiry(after);
+            }
+        }
+
+        private synchronized Entry peekEldest() {
+            Iterator<Entry> iterator = entries.values().iterator();
+            return iterator.hasNext() ? iterator.next() : null;
+        }
+
+        private synchronized boolean evictEldest() {
+            boolean shared = lockShared();
+            try {
+                return removeOldest();
+            } finally {
+                if (shared) unlockShared();
+            }
+        }
+
+        private synchronized boolean isLoading() {
+            return touchedWhileLoading != null;
+        }
+
+        private long getCacheSize() {
+            wait2InitOk();
+            refreshShared();
+            return cacheSize.get();
+        }
+
+        private int getCacheCount() {
+            wait2InitOk();
+            refreshShared();
+            return cacheCount.get();
+        }
+
+        private void wait2InitOk() {
+            try {
+                mThread.join();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+
+        /**
+         * Return the name of the typed key, a key has one entry whatever its type, which is kept
+         * in the header.
+         */
+        private String getCacheNameByKey(final String key) {
+            return getCacheName(key.substring(3));
+        }
+
+        /**
+         * Return the name of the key, which has no type prefix. In the fan-out layout it is the
+         * path of the file, e.g. "3F/A2/cdu_3FA2..." of the hex digest.
+         */
+        private String getCacheName(final String key) {
+            if (!fanOut) return getFlatName(key);
+            String digest = DiskCacheHelper.digest(key);
+            if (digest == null) return getFlatName(key);
+            return digest.substring(0, 2) + '/' + digest.substring(2, 4) + '/' + CACHE_PREFIX + digest;
+        }
+
+        private static String getFlatName(final String key) {
+            return CACHE_PREFIX + key.hashCode();
+        }
+
+        /**
+         * Return the tmp file of the name in the cache directory, whatever the layout.
+         */
+        private File getTmpFile(final String name) {
+            return new File(cacheDir, tmpPrefix + name.substring(name.lastIndexOf('/') + 1));
+        }
+
+        /**
+         * Return the names of the standalone files, including those of the fan-out directories.
+         */
+        private List<String> listCacheNames() {
+            List<String> names = new ArrayList<>();
+            String[] files = cacheDir.list();
+            if (files == null) return names;
+            for (String file : files) {
+                if (file.startsWith(CACHE_PREFIX)) {
+                    names.add(file);
+                } else if (isFanOutDir(file)) {
+                    String[] subDirs = new File(cacheDir, file).list();
+                    if (subDirs == null) continue;
+                    for (String subDir : subDirs) {
+                        if (!isFanOutDir(subDir)) continue;
+                        String[] children = new File(cacheDir, file + '/' + subDir).list();
+                        if (children == null) continue;
+                        for (String child : children) {
+                            if (child.startsWith(CACHE_PREFIX)) names.add(file + '/' + subDir + '/' + child);
+                        }
+                    }
+                }
+            }
+            return names;
+        }
+
+        private static boolean isFanOutDir(final String name) {
+            return name.length() == 2
+                    && Character.digit(name.charAt(0), 16) >= 0
+                    && Character.digit(name.charAt(1), 16) >= 0;
+        }
+
+        /**
+         * Return whether the name is of an entry written before the type moved into the header,
+         * i.e. "cdu_" + type + hash.
+         */
+        private static boolean isTypedName(final String name) {
+            int start = CACHE_PREFIX.length();
+            return name.length() > start + 3
+                    && name.startsWith(CACHE_PREFIX)
+                    && Character.isLetter(name.charAt(start))
+                    && name.charAt(start + 2) == '_';
+        }
+
+        private static String untypedName(final String typedName) {
+            return CACHE_PREFIX + typedName.substring(CACHE_PREFIX.length() + 3);
+        }
+
+        /**
+         * Rename the entries written before the type moved into the header. Of the entries of the
+         * same key, which were put with different types, the most recently used one is kept and
+         * the others are deleted. Called by the loader before {@link #onLoaded}, the monitor is
+         * only held to look up one name at a time, so puts and reads go on meanwhile.
+         *
+         * @return the migrated entries, or the loaded ones if none was typed
+         */
+        private Map<String, Entry> migrateTypedNames(final Map<String, Entry> loaded) {
+            Map<String, Entry> winners = new HashMap<>();
+            boolean typed = false;
+            for (Entry entry : loaded.values()) {
+                boolean isTyped = isTypedName(entry.name);
+                typed |= isTyped;
+                String name = isTyped ? untypedName(entry.name) : entry.name;
+                Entry winner = winners.get(name);
+                if (winner == null || winner.lastUsage <= entry.lastUsage) winners.put(name, entry);
+            }
+            if (!typed) return loaded;
+            Map<String, Entry> migrated = newLruIndex();
+            for (Entry entry : loaded.values()) {
+                if (!isTypedName(entry.name)) {
+                    if (winners.get(entry.name) == entry) migrated.put(entry.name, entry);
+                    continue;
+                }
+                String name = untypedName(entry.name);
+                File typedFile = new File(cacheDir, entry.name);
+                ReentrantLock lock = getKeyLock(name);
+                // the key is being written or was written while loading, the live entry wins
+                if (winners.get(name) != entry || !lock.tryLock()) {
+                    if (entry.segment < 0) typedFile.delete();
+                    continue;
+                }
+                try {
+                    if (isTouchedWhileLoading(name)) {
+                        if (entry.segment < 0) typedFile.delete();
+                        continue;
+                    }
+                    if (entry.segment < 0 && !typedFile.renameTo(new File(cacheDir, name))) {
+                        Log.e("CacheDiskUtils", "can't rename " + typedFile.getAbsolutePath());
+                        typedFile.delete();
+                        continue;
+                    }
+                    Entry renamed = new Entry(name, entry.size, entry.lastUsage, entry.dueTime,
+                            entry.segment, entry.offset);
+                    renamed.key = entry.key;
+                    renamed.keyless = entry.keyless;
+                    migrated.put(name, renamed);
+                } finally {
+                    lock.unlock();
+                }
+            }
+            return migrated;
+        }
+
+        private synchronized boolean isTouchedWhileLoading(final String name) {
+            return touchedWhileLoading.contains(name);
+        }
+
+        private synchronized Entry peek(final String name) {
+            return entries.get(name);
+        }
+
+        /**
+         * Return the lock guarding writes and deletes of the entry, readers never take it because
+         * files are published by rename and segments are append-only.
+         */
+        private ReentrantLock getKeyLock(final String name) {
+            int h = name.hashCode();
+            return keyLocks[(h ^ (h >>> 16)) & (LOCK_STRIPES - 1)];
+        }
+
+        private boolean isPacked() {
+            return segments != null;
+        }
+
+        private Editor edit(final String key, final long dueTime) {
+            final String name = getCacheNameByKey(key);
+            final File tmp = getTmpFile(name + '.' + EDITOR_ID.incrementAndGet());
+            try {
+                return new Editor(this, name, key.substring(3), DiskCacheHelper.getTypeTag(key), dueTime, tmp);
+            } catch (IOException e) {
+                e.printStackTrace();
+                tmp.delete();
+                return null;
+            }
+        }
+
+        /**
+         * Publish the file written by an editor.
+         */
+        private boolean commit(final String name, final String key, final File tmp, final long dueTime) {
+            ReentrantLock lock = getKeyLock(name);
+            lock.lock();
+            try {
+                removePending(name, null);
+                Entry entry = new Entry(name, tmp.length(), System.currentTimeMillis(), dueTime);
+                entry.key = key;
+                if (!publishFile(tmp, entry)) return false;
+            } finally {
+                lock.unlock();
+            }
+            removeFlat(key);
+            return true;
+        }
+
+        /**
+         * Return the channel of a standalone file positioned at its payload, null if there is no
+         * such file or it is due.
+         */
+        private FileChannel openPayloadChannel(final String key) {
+            final String name = getCacheNameByKey(key);
+            try {
+                return openPayloadChannel(key, name);
+            } catch (FileNotFoundException e) {
+                // released by an overwrite meanwhile, open it again once that is done
+                ReentrantLock lock = getKeyLock(name);
+                lock.lock();
+                try {
+                    return openPayloadChannel(key, name);
+                } catch (FileNotFoundException ignore) {
+                    return null;
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        private FileChannel openPayloadChannel(final String key, final String name)
+                throws FileNotFoundException {
+            // the file is older than the queued value
+            if (getPending(name) != null) return null;
+            if (loadingStale) wait2InitOk();
+            if (indexLoaded) {
+                Entry entry = peek(name);
+                if (entry == null && fanOut && migrateFlat(key.substring(3), name) != null) {
+                    entry = peek(name);
+                }
+                if (entry == null || entry.segment >= 0) return null;
+            }
+            final File file = getFileWhileLoading(key, name);
+            if (!file.exists()) return null;
+            FileChannel fc = null;
+            try {
+                fc = new RandomAccessFile(file, "r").getChannel();
+                Record header = DiskCacheHelper.readHeader(fc);
+                if (header == null || (header.flags & ~DiskCacheHelper.FLAG_REF) != 0
+                        || !DiskCacheHelper.isTypeOf(header, key) || checkKey(header, key.substring(3)) == null) {
+                    CloseUtils.closeIOQuietly(fc);
+                    return null;
+                }
+                if (header.isDue()) {
+                    CloseUtils.closeIOQuietly(fc);
+                    removeIfDue(key);
+                    return null;
+                }
+                if (header.flags == DiskCacheHelper.FLAG_REF) {
+                    // the deduplicated payload is a record of its own
+                    ByteBuffer ref = ByteBuffer.allocate((int) (fc.size() - header.offset));
+                    boolean read = DiskCacheHelper.readFully(fc, ref, header.offset);
+                    CloseUtils.closeIOQuietly(fc);
+                    if (!read) return null;
+                    String blob = UtilsBridge.bytes2String(ref.array());
+                    fc = new RandomAccessFile(new File(blobDir, blob), "r").getChannel();
+                    Record blobHeader = DiskCacheHelper.readHeader(fc);
+                    if (blobHeader == null || !blob.equals(blobHeader.key)) {
+                        CloseUtils.closeIOQuietly(fc);
+                        return null;
+                    }
+                    fc.position(blobHeader.offset);
+                } else {
+                    fc.position(header.offset);
+                }
+                updateModify(key);
+                return fc;
+            } catch (FileNotFoundException e) {
+                CloseUtils.closeIOQuietly(fc);
+                throw e;
+            } catch (IOException e) {
+                e.printStackTrace();
+                CloseUtils.closeIOQuietly(fc);
+                return null;
+            }
+        }
+
+        private void put(final String key, final long dueTime, byte[] data) {
+            put(key, dueTime, data, null);
+        }
+
+        private void put(final String key, final long dueTime, byte[] data, final String[] tags) {
+            final String name = getCacheNameByKey(key);
+            if (!admit(name, DiskCacheHelper.HEADER_LEN + data.length)) return;
+            byte flags = 0;
+            if (codec == Codec.DEFLATE && data.length >= compressThreshold) {
+                // pixels are big and compress less, speed matters more than the ratio
+                byte[] deflated = DiskCacheHelper.deflate(data, key.startsWith(TYPE_RAW_BITMAP)
+                        ? Deflater.BEST_SPEED
+                        : Deflater.DEFAULT_COMPRESSION);
+                if (deflated != null) {
+                    data = deflated;
+                    flags = DiskCacheHelper.FLAG_DEFLATE;
+                }
+            }
+            if (durability != null) {
+                enqueue(key, flags, dueTime, data, tags);
+                return;
+            }
+            final byte type = DiskCacheHelper.getTypeTag(key);
+            ReentrantLock lock = getKeyLock(name);
+            lock.lock();
+            String blob = null;
+            try {
+                File tmp = null;
+                if (!isPackable(data)) {
+                    blob = storeBlob(data, syncPuts);
+                    tmp = writeTmp(name, key.substring(3), type, flags, dueTime, data, syncPuts, blob);
+                    if (tmp == null) return;
+                }
+                publish(name, key.substring(3), type, flags, dueTime, data, tmp, tags, blob);
+                if (syncPuts) {
+                    if (tmp == null) segments.sync();
+                    synchronized (this) {
+                        journal.flush(true);
+                    }
+                }
+            } finally {
+                if (blob != null) unlinkBlob(blob);
+                lock.unlock();
+            }
+            removeFlat(key.substring(3));
+        }
+
+        /**
+         * Return whether the value of the name is admitted. It is if there is room for it or it
+         * replaces a value, else the policy decides whether it is worth evicting the least
+         * recently used entry.
+         */
+        private boolean admit(final String name, final long size) {
+            if (admission == null) return true;
+            if (!indexLoaded || getPending(name) != null) return true;
+            Entry victim;
+            synchronized (this) {
+                if (entries.containsKey(name)) return true;
+                if (cacheCount.get() < countLimit && cacheSize.get() + size <= sizeLimit) return true;
+                victim = peekEldest();
+            }
+            if (victim == null || admission.admit(name, victim.name)) return true;
+            rejectedCount.incrementAndGet();
+            return false;
+        }
+
+        private boolean isPackable(final byte[] data) {
+            return segments != null && data.length <= packedThreshold;
+        }
+
+        /**
+         * Write the standalone file of a value aside, it is published by {@link #publish}.
+         *
+         * @param blob The hash of the payload stored by {@link #storeBlob(byte[], boolean)}, the file then
+         *             refers to it, null to write the payload in the file.
+         * @return the tmp file, null if it can't be written
+         */
+        private File writeTmp(final String name,
+                              final String key,
+                              final byte type,
+                              final byte flags,
+                              final long dueTime,
+                              final byte[] data,
+                              final boolean force,
+                              final String blob) {
+            final File tmp = getTmpFile(name);
+            boolean written = blob == null
+                    ? DiskCacheHelper.writeRecord(tmp, key, type, flags, dueTime, data, force)
+                    : DiskCacheHelper.writeRecord(tmp, key, type, (byte) (flags | DiskCacheHelper.FLAG_REF),
+                            dueTime, UtilsBridge.string2Bytes(blob), force);
+            if (written) return tmp;
+            tmp.delete();
+            return null;
+        }
+
+        /**
+         * Store the payload once by the hash of its content and take a reference to it, so it
+         * can't be deleted before the entry which refers to it is published. The caller drops the
+         * reference by {@link #unlinkBlob(String)} once done. The payload is written as a record
+         * keyed by its hash, so a torn file doesn't pass for it.
+         *
+         * @param force True to sync the file, as the file which refers to it is.
+         * @return the hash, null if the payload isn't deduplicated
+         */
+        private String storeBlob(final byte[] data, final boolean force) {
+            if (dedupThreshold <= 0 || data.length < dedupThreshold) return null;
+            final String blob = DiskCacheHelper.hash(data);
+            if (blob == null) return null;
+            linkBlob(blob);
+            File file = new File(blobDir, blob);
+            // an equal value is stored already, nothing to write
+            if (file.exists()) return blob;
+            File tmp = new File(blobDir, tmpPrefix + blob + '_' + Thread.currentThread().getId());
+            if (blobDir.mkdirs() || blobDir.isDirectory()) {
+                if (DiskCacheHelper.writeRecord(tmp, blob, (byte) 0, (byte) 0, -1, data, force)
+                        && tmp.renameTo(file)) {
+                    return blob;
+                }
+            }
+            Log.e("CacheDiskUtils", "can't store " + file.getAbsolutePath());
+            tmp.delete();
+            unlinkBlob(blob);
+            return null;
+        }
+
+        private synchronized void linkBlob(final String blob) {
+            Integer refs = blobRefs.get(blob);
+            blobRefs.put(blob, refs == null ? 1 : refs + 1);
+        }
+
+        /**
+         * Drop a reference to the payload, its file is deleted with the last one.
+         */
+        private synchronized void unlinkBlob(final String blob) {
+            Integer refs = blobRefs.get(blob);
+            if (refs == null) return;
+            if (refs > 1) {
+                blobRefs.put(blob, refs - 1);
+                return;
+            }
+            blobRefs.remove(blob);
+            new File(blobDir, blob).delete();
+        }
+
+        /**
+         * Delete the payload files nobody refers to, left by a crash or a lost journal.
+         */
+        private void collectBlobs() {
+            final String[] names = blobDir.list();
+            if (names == null) return;
+            for (String name : names) {
+                String blob = name;
+                // a tmp file is named after the payload being written
+                int end = name.lastIndexOf('_');
+                if (name.startsWith(tmpPrefix) && end > tmpPrefix.length()) {
+                    blob = name.substring(tmpPrefix.length(), end);
+                }
+                synchronized (this) {
+                    if (!blobRefs.containsKey(blob)) new File(blobDir, name).delete();
+                }
+            }
+        }
+
+        /**
+         * Return the hash of the payload the file refers to, null if the file holds its payload.
+         */
+        private String readBlobRef(final File file) {
+            FileChannel fc = null;
+            try {
+                fc = new RandomAccessFile(file, "r").getChannel();
+                Record header = DiskCacheHelper.readHeader(fc);
+                if (header == null || (header.flags & DiskCacheHelper.FLAG_REF) == 0) return null;
+            } catch (IOException e) {
+                return null;
+            } finally {
+                CloseUtils.closeIOQuietly(fc);
+            }
+            Record record = DiskCacheHelper.readRecord(file);
+            return record == null ? null : UtilsBridge.bytes2String(record.data);
+        }
+
+        /**
+         * Return the record with its payload, the one of a deduplicated record is read from the
+         * file of its hash. Null if that file is gone, the value was removed meanwhile, or it isn't
+         * completely written.
+         */
+        private Record resolve(final Record record) {
+            if (record == null || (record.flags & DiskCacheHelper.FLAG_REF) == 0) return record;
+            String blob = UtilsBridge.bytes2String(record.data);
+            File file = new File(blobDir, blob);
+            Record payload = file.exists() ? DiskCacheHelper.readRecord(file) : null;
+            if (payload == null || !blob.equals(payload.key)) return null;
+            return new Record(record.type, (byte) (record.flags & ~DiskCacheHelper.FLAG_REF), record.dueTime,
+                    payload.data, 0, record.key);
+        }
+
+        /**
+         * Make the value visible, the caller holds the key lock. A standalone value is renamed from
+         * its tmp file, a packed one is appended to the active segment.
+         */
+        private void publish(final String name,
+                             final String key,
+                             final byte type,
+                             final byte flags,
+                             final long dueTime,
+                             final byte[] data,
+                             final File tmp,
+                             final String[] tags,
+                             final String blob) {
+            if (tmp == null) {
+                Entry entry = segments.append(name, key, System.currentTimeMillis(), type, flags, dueTime, data);
+                if (entry == null) return;
+                entry.key = key;
+                entry.tags = tags;
+                Entry previous = peek(name);
+                if (previous == null ? isLoading() : previous.segment < 0) {
+                    new File(cacheDir, name).delete();
+                }
+                onPut(entry);
+                return;
+            }
+            long size = DiskCacheHelper.getHeaderLen(key) + data.length;
+            Entry entry = new Entry(name, size, System.currentTimeMillis(), dueTime);
+            entry.key = key;
+            entry.tags = tags;
+            entry.blob = blob;
+            publishFile(tmp, entry);
+        }
+
+        /**
+         * Rename the tmp file to the entry and index it, the caller holds the key lock. Shared
+         * with other processes, the rename and its journal line happen under the journal lock so
+         * they can't interleave with theirs.
+         */
+        private boolean publishFile(final File tmp, final Entry entry) {
+            if (!multiProcess) return renameAndPut(tmp, entry);
+            synchronized (this) {
+                boolean shared = lockShared();
+                try {
+                    return renameAndPut(tmp, entry);
+                } finally {
+                    if (shared) unlockShared();
+                }
+            }
+        }
+
+        private boolean renameAndPut(final File tmp, final Entry entry) {
+            File file = new File(cacheDir, entry.name);
+            if (fanOut) file.getParentFile().mkdirs();
+            if (!tmp.renameTo(file)) {
+                Log.e("CacheDiskUtils", "can't rename " + tmp.getAbsolutePath());
+                tmp.delete();
+                return false;
+            }
+            onPut(entry);
+            return true;
+        }
+
+        private void enqueue(final String key,
+                             final byte flags,
+                             final long dueTime,
+                             final byte[] data,
+                             final String[] tags) {
+            final String name = getCacheNameByKey(key);
+            Pending item = new Pending(name, key.substring(3), DiskCacheHelper.getTypeTag(key), flags, dueTime, data,
+                    tags);
+            synchronized (pending) {
+                // the queue is full, the writer is asked to write it at once
+                while (maxPendingSize > 0 && !pending.isEmpty() && pendingSize + data.length > maxPendingSize) {
+                    flushRequested = true;
+                    pending.notifyAll();
+                    try {
+                        pending.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+                // an overwrite replaces the queued value and moves to the tail
+                Pending previous = pending.remove(name);
+                if (previous != null) pendingSize -= previous.data.length;
+                pending.put(name, item);
+                pendingSize += data.length;
+                enqueuedSeq++;
+                pending.notifyAll();
+            }
+            removeFlat(item.key);
+        }
+
+        private Pending getPending(final String name) {
+            if (durability == null) return null;
+            synchronized (pending) {
+                return pending.get(name);
+            }
+        }
+
+        private void removePending(final String name, final Pending item) {
+            if (durability == null) return;
+            synchronized (pending) {
+                if (item == null || pending.get(name) == item) {
+                    Pending removed = pending.remove(name);
+                    if (removed != null) pendingSize -= removed.data.length;
+                    if (pending.isEmpty()) pending.notifyAll();
+                }
+            }
+        }
+
+        private void runWriter() {
+            while (true) {
+                List<Pending> batch;
+                long seq;
+                synchronized (pending) {
+                    try {
+                        while (pending.isEmpty()) {
+                            pending.wait();
+                        }
+                        if (durability == Durability.FLUSH_ON_INTERVAL) {
+                            // let the overwrites in the interval coalesce
+                            long deadline = System.currentTimeMillis() + flushInterval;
+                            long left;
+                            while (!flushRequested && (left = deadline - System.currentTimeMillis()) > 0) {
+                                pending.wait(left);
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    flushRequested = false;
+                    writing = true;
+                    batch = new ArrayList<>(pending.values());
+                    seq = enqueuedSeq;
+                }
+                writeBatch(batch);
+                synchronized (pending) {
+                    writing = false;
+                    flushedSeq = seq;
+                    pending.notifyAll();
+                }
+            }
+        }
+
+        /**
+         * Write the files of the batch outside of the key locks, then publish each value which is
+         * still the queued one of its key, the journal is flushed once for the whole batch.
+         */
+        private void writeBatch(final List<Pending> batch) {
+            final boolean sync = durability != Durability.NONE;
+            final File[] tmps = new File[batch.size()];
+            final String[] blobs = new String[batch.size()];
+            for (int i = 0; i < tmps.length; i++) {
+                Pending item = batch.get(i);
+                if (!isPackable(item.data)) {
+                    blobs[i] = storeBlob(item.data, sync);
+                    tmps[i] = writeTmp(item.name, item.key, item.type, item.flags, item.dueTime, item.data, sync,
+                            blobs[i]);
+                }
+            }
+            synchronized (this) {
+                journal.setFlushDeferred(true);
+            }
+            try {
+                for (int i = 0; i < tmps.length; i++) {
+                    Pending item = batch.get(i);
+                    if (tmps[i] == null && !isPackable(item.data)) {
+                        removePending(item.name, item);
+                        continue;
+                    }
+                    ReentrantLock lock = getKeyLock(item.name);
+                    lock.lock();
+                    try {
+                        if (getPending(item.name) != item) {
+                            // removed or overwritten meanwhile
+                            if (tmps[i] != null) tmps[i].delete();
+                            continue;
+                        }
+                        publish(item.name, item.key, item.type, item.flags, item.dueTime, item.data, tmps[i],
+                                item.tags, blobs[i]);
+                        removePending(item.name, item);
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+                if (sync && segments != null) segments.sync();
+            } finally {
+                synchronized (this) {
+                    journal.setFlushDeferred(false);
+                    journal.flush(sync);
+                }
+                for (String blob : blobs) {
+                    if (blob != null) unlinkBlob(blob);
+                }
+            }
+        }
+
+        /**
+         * Block until the values queued before are written.
+         */
+        private void flush() {
+            if (durability == null) return;
+            synchronized (pending) {
+                long target = enqueuedSeq;
+                flushRequested = true;
+                pending.notifyAll();
+                // the queue may also be emptied by removals
+                while (flushedSeq < target && (writing || !pending.isEmpty())) {
+                    try {
+                        pending.wait();
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                        return;
+                    }
+                }
+            }
+        }
+
+        private synchronized void onPut(final Entry entry) {
+            boolean shared = lockShared();
+            try {
+                markTouched(entry.name);
+                Entry previous = entries.remove(entry.name);
+                if (previous != null) {
+                    cacheSize.addAndGet(-previous.size);
+                    cacheCount.addAndGet(-1);
+                    release(previous);
+                }
+                entries.put(entry.name, entry);
+                cacheSize.addAndGet(entry.size);
+                cacheCount.addAndGet(1);
+                if (entry.blob != null) linkBlob(entry.blob);
+                indexExpiry(entry);
+                indexTags(entry);
+                indexKey(entry);
+                journalClean(entry);
+                trimToLimit();
+            } finally {
+                if (shared) unlockShared();
+            }
+            if (budgetWeight > 0) GlobalBudget.scheduleTrim();
+        }
+
+        /**
+         * Add the entry to the expiry index, the caller holds the monitor. Removed or replaced
+         * entries are left in the index and dropped when they reach its head, the index is rebuilt
+         * once they outnumber the live entries.
+         */
+        private void indexExpiry(final Entry entry) {
+            if (entry.dueTime == -1) return;
+            expiries.offer(entry);
+            if (expiries.size() > (entries.size() << 1) + 64) {
+                rebuildExpiries();
+            }
+            scheduleSweepAtDue();
+        }
+
+        /**
+         * Schedule the sweep at the due time of the earliest entry in the expiry index, no sooner
+         * than the sweep interval after the last one, the caller holds the monitor. Nothing is
+         * scheduled while no entry expires.
+         */
+        private void scheduleSweepAtDue() {
+            if (sweepInterval <= 0 || closed || touchedWhileLoading != null) return;
+            Entry head = expiries.peek();
+            if (head == null) return;
+            long time = Math.max(head.dueTime + 1, lastSweep + sweepInterval);
+            if (sweepTask != null) {
+                if (sweepTime <= time) return;
+                sweepTask.cancel();
+            }
+            sweepTime = time;
+            sweepTask = new TimerTask() {
+                @Override
+                public void run() {
+                    synchronized (DiskCacheManager.this) {
+                        if (sweepTask != this) return;
+                        sweepTask = null;
+                    }
+                    scheduleSweep();
+                }
+            };
+            SWEEPER.schedule(sweepTask, Math.max(time - System.currentTimeMillis(), 0));
+        }
+
+        private void cancelSweep() {
+            if (sweepTask == null) return;
+            sweepTask.cancel();
+            sweepTask = null;
+        }
+
+        private void rebuildExpiries() {
+            expiries.clear();
+            for (Entry entry : entries.values()) {
+                if (entry.dueTime != -1) expiries.offer(entry);
+            }
+        }
+
+        /**
+         * Add the entry to the tag index, the caller holds the monitor. Like the expiry index,
+         * removed or replaced entries are left in it, a member is live only while it is the
+         * entry of its name.
+         */
+        private void indexTags(final Entry entry) {
+            if (entry.tags == null) return;
+            for (String tag : entry.tags) {
+                List<Entry> members = tagIndex.get(tag);
+                if (members == null) {
+                    members = new ArrayList<>();
+                    tagIndex.put(tag, members);
+                }
+                members.add(entry);
+                taggedCount++;
+            }
+            if (taggedCount > (entries.size() << 1) + 64) {
+                rebuildTags();
+            }
+        }
+
+        private void rebuildTags() {
+            tagIndex.clear();
+            taggedCount = 0;
+            for (Entry entry : entries.values()) {
+                if (entry.tags == null) continue;
+                for (String tag : entry.tags) {
+                    List<Entry> members = tagIndex.get(tag);
+                    if (members == null) {
+                        members = new ArrayList<>();
+                        tagIndex.put(tag, members);
+                    }
+                    members.add(entry);
+                    taggedCount++;
+                }
+            }
+        }
+
+        /**
+         * Add the entry to the key index, the caller holds the monitor. Like the tag index, an
+         * entry replaced under another key of its name is left in it until the index is rebuilt.
+         */
+        private void indexKey(final Entry entry) {
+            if (entry.key == null) return;
+            keyIndex.put(entry.key, entry);
+            if (keyIndex.size() > (entries.size() << 1) + 64) {
+                rebuildKeys();
+            }
+        }
+
+        private void rebuildKeys() {
+            keyIndex.clear();
+            for (Entry entry : entries.values()) {
+                if (entry.key != null) keyIndex.put(entry.key, entry);
+            }
+        }
+
+        /**
+         * Return the sorted keys with the prefix of the live entries and of the values queued by
+         * write-behind.
+         */
+        private List<String> keysWithPrefix(final String prefix) {
+            Set<String> keys = new TreeSet<>();
+            long millis = System.currentTimeMillis();
+            synchronized (pending) {
+                for (Pending item : pending.values()) {
+                    if (item.key.startsWith(prefix) && (item.dueTime == -1 || millis <= item.dueTime)) {
+                        keys.add(item.key);
+                    }
+                }
+            }
+            wait2InitOk();
+            refreshShared();
+            synchronized (this) {
+                for (Map.Entry<String, Entry> indexed : keyIndex.tailMap(prefix).entrySet()) {
+                    if (!indexed.getKey().startsWith(prefix)) break;
+                    Entry entry = indexed.getValue();
+                    if (entries.get(entry.name) != entry) continue;
+                    if (entry.dueTime == -1 || millis <= entry.dueTime) keys.add(entry.key);
+                }
+            }
+            return new ArrayList<>(keys);
+        }
+
+        private void scheduleSpaceCheck() {
+            if (isLoading() || !checkingSpace.compareAndSet(false, true)) return;
+            ThreadUtils.getIoPool().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        fitSizeLimit();
+                        if (cacheSize.get() <= sizeLimit) return;
+                        synchronized (DiskCacheManager.this) {
+                            boolean shared = lockShared();
+                            try {
+                                trimToLimit();
+                            } finally {
+                                if (shared) unlockShared();
+                            }
+                        }
+                    } finally {
+                        checkingSpace.set(false);
+                    }
+                }
+            });
+        }
+
+        /**
+         * Fit the size limit to the free space of the storage: half of the space the cache could
+         * grow into while {@link #LOW_SPACE_RATIO} of the storage stays free, within the bounds.
+         */
+        private void fitSizeLimit() {
+            final String path = cacheDir.getAbsolutePath();
+            long total;
+            long free;
+            try {
+                total = UtilsBridge.getFsTotalSize(path);
+                free = UtilsBridge.getFsAvailableSize(path);
+            } catch (IllegalArgumentException e) {
+                // the directory is gone, the manager is replaced on the next access
+                return;
+            }
+            if (total <= 0) return;
+            long room = cacheSize.get() + free - (long) (total * LOW_SPACE_RATIO);
+            sizeLimit = Math.max(minSizeLimit, Math.min(maxSizeLimit, room / 2));
+        }
+
+        private void scheduleSweep() {
+            if (isLoading() || !sweeping.compareAndSet(false, true)) return;
+            ThreadUtils.getIoPool().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        sweep();
+                    } finally {
+                        sweeping.set(false);
+                    }
+                }
+            });
+        }
+
+        /**
+         * Delete up to the sweep budget of expired entries, earliest first.
+         */
+        private void sweep() {
+            final long now = System.currentTimeMillis();
+            List<Entry> due = new ArrayList<>();
+            synchronized (this) {
+                while (due.size() < sweepBudget) {
+                    Entry head = expiries.peek();
+                    if (head == null || head.dueTime >= now) break;
+                    expiries.poll();
+                    if (entries.get(head.name) == head) due.add(head);
+                }
+            }
+            for (Entry entry : due) {
+                ReentrantLock lock = getKeyLock(entry.name);
+                lock.lock();
+                try {
+                    // a value put meanwhile is kept
+                    if (peek(entry.name) == entry && getPending(entry.name) == null) {
+                        delete(entry.name);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+            synchronized (this) {
+                lastSweep = now;
+                scheduleSweepAtDue();
+            }
+        }
+
+        /**
+         * Return the record of the key, null if it doesn't exist or can't be read.
+         */
+        private Record read(final String key) {
+            final String name = getCacheNameByKey(key);
+            onLookup(name);
+            Record record = checkKey(read(key, name), key.substring(3));
+            if (record == null) record = readPack(key.substring(3));
+            if (record != null && !record.isDue()) hitCount.incrementAndGet();
+            return record;
+        }
+
+        /**
+         * Return the record of the key in the pack, null if there is none. The key has no type
+         * prefix.
+         */
+        private Record readPack(final String key) {
+            CachePack opened = getPack();
+            return opened == null ? null : opened.read(key);
+        }
+
+        private CachePack getPack() {
+            if (packFile == null && packAsset == null) return null;
+            CachePack opened = pack;
+            if (opened == null) {
+                synchronized (packLock) {
+                    opened = pack;
+                    if (opened == null) {
+                        opened = packFile != null ? CachePack.open(packFile) : CachePack.openAsset(packAsset);
+                        // an unusable pack is opened once
+                        pack = opened = opened != null ? opened : CachePack.EMPTY;
+                    }
+                }
+            }
+            return opened;
+        }
+
+        private Record read(final String key, final String name) {
+            Pending item = getPending(name);
+            if (item != null) return new Record(item.type, item.flags, item.dueTime, item.data, 0, item.key);
+            // the files of invalidated entries are only told apart through the index
+            if (loadingStale) wait2InitOk();
+            if (indexLoaded) {
+                refreshShared();
+                return readIndexed(key.substring(3), name);
+            }
+            Entry entry = peek(name);
+            if (entry == null && segments != null && isLoading()) {
+                // packed entries are only reachable through the index
+                wait2InitOk();
+                entry = peek(name);
+            }
+            if (entry != null && entry.segment >= 0) return readSegment(name, entry);
+            File file = entry == null ? getFileWhileLoading(key, name) : new File(cacheDir, name);
+            Record record = file.equals(new File(cacheDir, name))
+                    ? readFile(name)
+                    : file.exists() ? resolve(DiskCacheHelper.readRecord(file)) : null;
+            if (record == null && entry == null && !file.equals(new File(cacheDir, name))) {
+                // the typed file may have been renamed to the name meanwhile, see migrateTypedNames
+                return readFile(name);
+            }
+            return record;
+        }
+
+        /**
+         * Return the record of the name once loaded, the loaded index knows every entry so a miss
+         * doesn't touch the file system. The key has no type prefix.
+         */
+        private Record readIndexed(final String key, final String name) {
+            Entry entry = peek(name);
+            if (entry == null) {
+                Record record = fanOut ? migrateFlat(key, name) : null;
+                if (record == null) negativeCount.incrementAndGet();
+                return record;
+            }
+            Record record = entry.segment < 0 ? readFile(name) : readSegment(name, entry);
+            if (record == null) falsePositiveCount.incrementAndGet();
+            return record;
+        }
+
+        /**
+         * Return the records of the keys, the keys have no type prefix and the missing ones are
+         * left out. If parallel the io pool helps the calling thread to read them.
+         */
+        private Map<String, Record> readAll(final Collection<String> keys, final boolean parallel) {
+            wait2InitOk();
+            refreshShared();
+            final String[] keyArray = keys.toArray(new String[0]);
+            final Record[] records = new Record[keyArray.length];
+            final AtomicInteger cursor = new AtomicInteger();
+            final CountDownLatch done = new CountDownLatch(keyArray.length);
+            Runnable reader = new Runnable() {
+                @Override
+                public void run() {
+                    int i;
+                    // a task which starts late finds nothing left, so the caller never waits on the queue
+                    while ((i = cursor.getAndIncrement()) < keyArray.length) {
+                        try {
+                            final String name = getCacheName(keyArray[i]);
+                            onLookup(name);
+                            Pending item = getPending(name);
+                            records[i] = checkKey(item != null
+                                    ? new Record(item.type, item.flags, item.dueTime, item.data, 0, item.key)
+                                    : readIndexed(keyArray[i], name), keyArray[i]);
+                            if (records[i] == null) records[i] = readPack(keyArray[i]);
+                            if (records[i] != null && !records[i].isDue()) hitCount.incrementAndGet();
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                }
+            };
+            if (parallel) {
+                int helpers = Math.min(keyArray.length, Runtime.getRuntime().availableProcessors()) - 1;
+                for (int i = 0; i < helpers; i++) {
+                    ThreadUtils.getIoPool().execute(reader);
+                }
+            }
+            reader.run();
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+                return new HashMap<>();
+            }
+            Map<String, Record> result = new HashMap<>();
+            for (int i = 0; i < keyArray.length; i++) {
+                if (records[i] != null) result.put(keyArray[i], records[i]);
+            }
+            return result;
+        }
+
+        /**
+         * Return null if the record stored another key of the same name, the key has no type
+         * prefix.
+         */
+        private Record checkKey(final Record record, final String key) {
+            if (record == null || DiskCacheHelper.isKeyOf(record, key)) return record;
+            Log.e("CacheDiskUtils", "key " + key + " collides with " + record.key);
+            return null;
+        }
+
+        /**
+         * Return the file of the key while loading, which may still be named after its type until
+         * the loading renames it, or still be flat until it is read once loaded.
+         */
+        private File getFileWhileLoading(final String key, final String name) {
+            File file = new File(cacheDir, name);
+            if (file.exists() || indexLoaded) return file;
+            if (fanOut) {
+                File flatFile = new File(cacheDir, getFlatName(key.substring(3)));
+                if (flatFile.exists()) return flatFile;
+            }
+            File typedFile = new File(cacheDir, CACHE_PREFIX + key.substring(0, 3) + key.substring(3).hashCode());
+            return typedFile.exists() ? typedFile : file;
+        }
+
+        /**
+         * Move the entry of the key put before the fan-out layout to its fan-out name, the first
+         * time the key is looked up once loaded. The flat name is a 32-bit hash which other keys
+         * may share, so the entry is only taken if the key stored in it is the key or unknown.
+         *
+         * @return the record of the key, null if there is no flat entry of it
+         */
+        private Record migrateFlat(final String key, final String name) {
+            final String flatName = getFlatName(key);
+            Entry flat = peek(flatName);
+            if (flat == null) return null;
+            Record record = flat.segment < 0 ? readFile(flatName) : readSegment(flatName, flat);
+            if (record == null || !DiskCacheHelper.isKeyOf(record, key)) return null;
+            ReentrantLock lock = getKeyLock(name);
+            lock.lock();
+            try {
+                // a value put meanwhile wins
+                if (peek(name) == null && getPending(name) == null) {
+                    File tmp = null;
+                    if (!isPackable(record.data)) {
+                        tmp = writeTmp(name, key, record.type, record.flags, record.dueTime, record.data, false, null);
+                    }
+                    if (tmp != null || isPackable(record.data)) {
+                        publish(name, key, record.type, record.flags, record.dueTime, record.data, tmp, flat.tags, null);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            removeFlat(key);
+            return record;
+        }
+
+        /**
+         * Remove the entry of the key put before the fan-out layout, so it can't come back once
+         * the key is overwritten or removed. The caller holds no key lock.
+         */
+        private void removeFlat(final String key) {
+            if (!fanOut) return;
+            final String flatName = getFlatName(key);
+            if (!indexLoaded) {
+                // packed entries are only reachable through the index, onLoaded drops them
+                if (segments != null) {
+                    synchronized (this) {
+                        if (touchedWhileLoading != null) {
+                            flatWhileLoading.put(flatName, key);
+                            return;
+                        }
+                    }
+                } else if (!new File(cacheDir, flatName).exists()) {
+                    return;
+                }
+            }
+            Entry flat = peek(flatName);
+            if (flat == null && indexLoaded) return;
+            ReentrantLock lock = getKeyLock(flatName);
+            lock.lock();
+            try {
+                flat = peek(flatName);
+                Record record = flat != null && flat.segment >= 0
+                        ? readSegment(flatName, flat)
+                        : readFile(flatName);
+                if (record != null && DiskCacheHelper.isKeyOf(record, key)) delete(flatName);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private Record readSegment(final String name, Entry entry) {
+            Record record = segments.read(entry);
+            if (record != null) return record;
+            // the segment may have been compacted meanwhile
+            entry = peek(name);
+            if (entry == null || entry.segment < 0) return readFile(name);
+            return segments.read(entry);
+        }
+
+        /**
+         * Return whether the entry of the key exists and isn't due, the key has no type prefix.
+         */
+        private boolean contains(final String key) {
+            final String name = getCacheName(key);
+            Pending item = getPending(name);
+            if (item != null) return item.dueTime == -1 || System.currentTimeMillis() <= item.dueTime;
+            wait2InitOk();
+            refreshShared();
+            Entry entry = peek(name);
+            if (entry == null && fanOut) {
+                Record record = migrateFlat(key, name);
+                if (record != null) return !record.isDue();
+            }
+            if (entry == null) {
+                CachePack opened = getPack();
+                return opened != null && opened.contains(key);
+            }
+            return entry != null && (entry.dueTime == -1 || System.currentTimeMillis() <= entry.dueTime);
+        }
+
+        private void onLookup(final String name) {
+            lookupCount.incrementAndGet();
+            if (admission != null) admission.record(name);
+        }
+
+        private Stats getStats() {
+            return new Stats(lookupCount.get(), hitCount.get(), negativeCount.get(),
+                    falsePositiveCount.get(), rejectedCount.get());
+        }
+
+        private Record readFile(final String name) {
+            File file = new File(cacheDir, name);
+            if (!file.exists()) return null;
+            Record record = DiskCacheHelper.readRecord(file);
+            Record resolved = resolve(record);
+            if (resolved != null || record == null || (record.flags & DiskCacheHelper.FLAG_REF) == 0) {
+                return resolved;
+            }
+            // the payload was released by an overwrite meanwhile, read again once that is done
+            ReentrantLock lock = getKeyLock(name);
+            lock.lock();
+            try {
+                return resolve(DiskCacheHelper.readRecord(file));
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Update the usage of the key, the READ line goes out with the next flushed line. Hits
+         * while loading aren't recorded. Hits don't take the lock shared with other processes,
+         * see {@link DiskJournal#writeRead(Entry)}.
+         */
+        private void updateModify(final String key) {
+            final String name = getCacheNameByKey(key);
+            synchronized (this) {
+                Entry entry = entries.get(name);
+                if (entry == null) return;
+                entry.lastUsage = System.currentTimeMillis();
+                touch(entry);
+                if (!journal.isOpen()) return;
+                if (journal.writeRead(entry)) scheduleShareReads();
+                rebuildJournalIfRequired();
+            }
+        }
+
+        /**
+         * Update the usages of the keys, which have no type prefix, under one monitor. Called once
+         * loaded, see {@link #readAll}.
+         */
+        private void updateModify(final Collection<String> keys) {
+            long millis = System.currentTimeMillis();
+            synchronized (this) {
+                if (!journal.isOpen()) return;
+                boolean share = false;
+                for (String key : keys) {
+                    Entry entry = entries.get(getCacheName(key));
+                    if (entry == null) continue;
+                    entry.lastUsage = millis;
+                    touch(entry);
+                    share |= journal.writeRead(entry);
+                }
+                if (share) scheduleShareReads();
+                rebuildJournalIfRequired();
+            }
+        }
+
+        /**
+         * Write the READ lines kept for the lock shared with other processes in background, once
+         * enough of them piled up without a write taking the lock.
+         */
+        private void scheduleShareReads() {
+            ThreadUtils.getIoPool().execute(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (DiskCacheManager.this) {
+                        if (lockShared()) unlockShared();
+                    }
+                }
+            });
+        }
+
+        /**
+         * Remove the entries of the keys which are still due, the keys have no type prefix.
+         * Called once loaded, see {@link #readAll}.
+         */
+        private void removeAllIfDue(final Collection<String> keys) {
+            for (String key : keys) {
+                final String name = getCacheName(key);
+                ReentrantLock lock = getKeyLock(name);
+                lock.lock();
+                try {
+                    deleteIfDue(name);
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        /**
+         * Remove the entries of the keys whatever their types, the keys have no type prefix. The
+         * journal is flushed once for the batch.
+         */
+        private boolean removeAll(final Collection<String> keys) {
+            synchronized (this) {
+                journal.setFlushDeferred(true);
+            }
+            boolean removed = true;
+            try {
+                for (String key : keys) {
+                    removed &= removeByKey(key);
+                }
+            } finally {
+                synchronized (this) {
+                    journal.setFlushDeferred(false);
+                    journal.flush(false);
+                }
+            }
+            return removed;
+        }
+
+        /**
+         * Remove the members of the tag, the queued values included, the journal is flushed once.
+         */
+        private boolean invalidateTag(final String tag) {
+            wait2InitOk();
+            Set<String> names = new HashSet<>();
+            if (durability != null) {
+                synchronized (pending) {
+                    for (Pending item : pending.values()) {
+                        if (DiskCacheHelper.hasTag(item.tags, tag)) names.add(item.name);
+                    }
+                }
+            }
+            synchronized (this) {
+                boolean shared = lockShared();
+                try {
+                    List<Entry> members = tagIndex.remove(tag);
+                    if (members != null) {
+                        taggedCount -= members.size();
+                        for (Entry entry : members) {
+                            if (entries.get(entry.name) == entry) names.add(entry.name);
+                        }
+                    }
+                } finally {
+                    if (shared) unlockShared();
+                }
+                journal.setFlushDeferred(true);
+            }
+            boolean removed = true;
+            try {
+                for (String name : names) {
+                    removed &= removeIfTagged(name, tag);
+                }
+            } finally {
+                synchronized (this) {
+                    journal.setFlushDeferred(false);
+                    journal.flush(false);
+                }
+            }
+            return removed;
+        }
+
+        /**
+         * Remove the value of the name if it still has the tag, a value put again meanwhile
+         * without it is kept.
+         */
+        private boolean removeIfTagged(final String name, final String tag) {
+            ReentrantLock lock = getKeyLock(name);
+            lock.lock();
+            try {
+                Pending item = getPending(name);
+                if (item != null) {
+                    // the queued value replaces the indexed one
+                    return !DiskCacheHelper.hasTag(item.tags, tag) || delete(name);
+                }
+                Entry entry = peek(name);
+                if (entry == null || !DiskCacheHelper.hasTag(entry.tags, tag)) return true;
+                return delete(name);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Put the values of the typed keys, the journal is flushed once for the batch.
+         */
+        private void putAll(final List<String> keys,
+                            final List<byte[]> data,
+                            final long dueTime,
+                            final String[] tags) {
+            synchronized (this) {
+                journal.setFlushDeferred(true);
+            }
+            try {
+                for (int i = 0; i < keys.size(); i++) {
+                    put(keys.get(i), dueTime, data.get(i), tags);
+                }
+            } finally {
+                synchronized (this) {
+                    journal.setFlushDeferred(false);
+                    journal.flush(false);
+                }
+            }
+        }
+
+        /**
+         * Remove the entry of the key whatever its type, the key has no type prefix.
+         */
+        private boolean removeByKey(final String key) {
+            final String name = getCacheName(key);
+            ReentrantLock lock = getKeyLock(name);
+            lock.lock();
+            try {
+                if (!delete(name)) return false;
+            } finally {
+                lock.unlock();
+            }
+            removeFlat(key);
+            return true;
+        }
+
+        /**
+         * Remove the entry if it is still due, a newer value put meanwhile is kept.
+         */
+        private void removeIfDue(final String key) {
+            final String name = getCacheNameByKey(key);
+            ReentrantLock lock = getKeyLock(name);
+            lock.lock();
+            try {
+                if (indexLoaded) {
+                    deleteIfDue(name);
+                    return;
+                }
+                Record record = read(key);
+                if (record != null && record.isDue()) {
+                    delete(name);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Delete the entry if it is due by the index, the caller holds the key lock.
+         */
+        private void deleteIfDue(final String name) {
+            // a value put meanwhile is kept
+            if (getPending(name) != null) return;
+            Entry entry = peek(name);
+            if (entry != null && entry.dueTime != -1 && System.currentTimeMillis() > entry.dueTime) {
+                delete(name);
+            }
+        }
+
+        /**
+         * Delete the entry and its file, the caller holds the key lock.
+         */
+        private boolean delete(final String name) {
+            removePending(name, null);
+            if (!multiProcess) return deleteFile(name);
+            // the file and its journal line change together, see publishFile
+            synchronized (this) {
+                boolean shared = lockShared();
+                try {
+                    return deleteFile(name);
+                } finally {
+                    if (shared) unlockShared();
+                }
+            }
+        }
+
+        private boolean deleteFile(final String name) {
+            Entry entry = peek(name);
+            // once loaded, a name missing from the index has no file, see collectStrays()
+            if (entry == null ? isLoading() : entry.segment < 0) {
+                File file = new File(cacheDir, name);
+                if (file.exists() && !file.delete()) return false;
+            }
+            synchronized (this) {
+                markTouched(name);
+                entry = entries.remove(name);
+                if (entry != null) {
+                    cacheSize.addAndGet(-entry.size);
+                    cacheCount.addAndGet(-1);
+                    release(entry);
+                    journalRemove(name);
+                }
+            }
+            return true;
+        }
+
+        private boolean clear() {
+            if (durability != null) {
+                synchronized (pending) {
+                    pending.clear();
+                    pendingSize = 0;
+                    pending.notifyAll();
+                }
+            }
+            File[] tmps = cacheDir.listFiles(new FilenameFilter() {
+                @Override
+                public boolean accept(File dir, String name) {
+                    return name.startsWith(tmpPrefix);
+                }
+            });
+            if (tmps != null) {
+                for (File tmp : tmps) {
+                    tmp.delete();
+                }
+            }
+            boolean flag = true;
+            for (String name : listCacheNames()) {
+                if (!removeByName(name)) flag = false;
+            }
+            if (segments != null) {
+                wait2InitOk();
+                List<String> packed = new ArrayList<>();
+                synchronized (this) {
+                    for (Entry entry : entries.values()) {
+                        if (entry.segment >= 0) packed.add(entry.name);
+                    }
+                }
+                for (String name : packed) {
+                    removeByName(name);
+                }
+            }
+            if (flag) {
+                synchronized (this) {
+                    boolean shared = lockShared();
+                    try {
+                        if (journal.isOpen()) rebuildJournal();
+                    } finally {
+                        if (shared) unlockShared();
+                    }
+                }
+            }
+            return flag;
+        }
+
+        private boolean removeByName(final String name) {
+            ReentrantLock lock = getKeyLock(name);
+            lock.lock();
+            try {
+                return delete(name);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Release what the removed entry holds besides its file, the caller holds the monitor.
+         */
+        private void release(final Entry entry) {
+            releaseSegment(entry);
+            if (entry.blob != null) unlinkBlob(entry.blob);
+        }
+
+        private void releaseSegment(final Entry entry) {
+            if (entry.segment < 0 || segments == null) return;
+            if (segments.release(entry)) {
+                scheduleCompaction(entry.segment);
+            }
+        }
+
+        private void scheduleCompaction(final long segmentId) {
+            ThreadUtils.getIoPool().execute(new Runnable() {
+                @Override
+                public void run() {
+                    compact(segmentId);
+                }
+            });
+        }
+
+        /**
+         * Move the live entries of a mostly dead segment to the active one, the segment is deleted
+         * when the last entry leaves it.
+         */
+        private void compact(final long segmentId) {
+            List<String> names = new ArrayList<>();
+            synchronized (this) {
+                for (Entry entry : entries.values()) {
+                    if (entry.segment == segmentId) names.add(entry.name);
+                }
+            }
+            for (String name : names) {
+                ReentrantLock lock = getKeyLock(name);
+                lock.lock();
+                try {
+                    Entry entry = peek(name);
+                    if (entry == null || entry.segment != segmentId) continue;
+                    Record record = segments.read(entry);
+                    if (record == null) continue;
+                    Entry moved = segments.append(name, record.key, entry.lastUsage, record.type, record.flags,
+                            record.dueTime, record.data);
+                    if (moved == null) continue;
+                    moved.key = entry.key;
+                    moved.keyless = entry.keyless;
+                    moved.tags = entry.tags;
+                    synchronized (this) {
+                        // same position in the index, only the location changes
+                        entries.put(name, moved);
+                        indexExpiry(moved);
+                        indexTags(moved);
+                        indexKey(moved);
+                        journalClean(moved);
+                        segments.release(entry);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+            segments.onCompacted(segmentId);
+        }
+
+        private void markTouched(final String name) {
+            if (touchedWhileLoading != null) touchedWhileLoading.add(name);
+        }
+
+        private void journalClean(final Entry entry) {
+            if (!journal.isOpen()) return;
+            journal.writeClean(entry);
+            rebuildJournalIfRequired();
+        }
+
+        private void journalRemove(final String name) {
+            if (!journal.isOpen()) return;
+            journal.writeRemove(name);
+            rebuildJournalIfRequired();
+        }
+
+        /**
+         * Compact the journal, the stale entries are kept before an invalidation so they are still
+         * reclaimed after a restart. The caller holds the monitor.
+         */
+        private void rebuildJournal() {
+            List<Entry> staleEntries = new ArrayList<>();
+            for (Collection<Entry> generation : stale) {
+                staleEntries.addAll(generation);
+            }
+            journal.rebuild(staleEntries, entries.values());
+        }
+
+        /**
+         * Move every entry out of the index at once, they are reclaimed by {@link #reclaim()}.
+         * The caller holds the monitor.
+         */
+        private void invalidateIndex() {
+            if (entries.isEmpty()) return;
+            stale.add(entries.values());
+            entries = newLruIndex();
+            cacheSize.set(0);
+            cacheCount.set(0);
+            expiries.clear();
+            cancelSweep();
+            tagIndex.clear();
+            taggedCount = 0;
+            keyIndex.clear();
+        }
+
+        /**
+         * Start a new generation: the entries of the former ones are invisible at once, their
+         * files and segment space are reclaimed in background.
+         */
+        private void invalidate() {
+            if (durability != null) {
+                synchronized (pending) {
+                    pending.clear();
+                    pendingSize = 0;
+                    pending.notifyAll();
+                }
+            }
+            synchronized (this) {
+                if (touchedWhileLoading != null) {
+                    // the replayed entries are moved out once loaded, reads wait for them meanwhile
+                    invalidatedWhileLoading = true;
+                    loadingStale = true;
+                }
+                boolean shared = lockShared();
+                try {
+                    invalidateIndex();
+                    if (journal.isOpen()) {
+                        journal.writeInvalidate();
+                        rebuildJournalIfRequired();
+                    }
+                } finally {
+                    if (shared) unlockShared();
+                }
+            }
+            scheduleReclaim();
+        }
+
+        private void scheduleReclaim() {
+            synchronized (this) {
+                if (stale.isEmpty()) return;
+            }
+            if (!reclaiming.compareAndSet(false, true)) return;
+            ThreadUtils.getIoPool().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        reclaim();
+                    } finally {
+                        reclaiming.set(false);
+                    }
+                    // stale entries added after the last poll
+                    scheduleReclaim();
+                }
+            });
+        }
+
+        /**
+         * Delete the files and release the segment space of the stale entries, one at a time under
+         * its key lock, so a value put meanwhile under the same name is never touched.
+         */
+        private void reclaim() {
+            Entry entry;
+            while ((entry = pollStale()) != null) {
+                ReentrantLock lock = getKeyLock(entry.name);
+                lock.lock();
+                try {
+                    boolean deleteFile;
+                    synchronized (this) {
+                        boolean shared = lockShared();
+                        try {
+                            release(entry);
+                            if (entry.segment >= 0) continue;
+                            // the file belongs to the live entry of the name unless that one is packed
+                            Entry live = entries.get(entry.name);
+                            deleteFile = live == null || live.segment >= 0;
+                            if (deleteFile && multiProcess) {
+                                new File(cacheDir, entry.name).delete();
+                                continue;
+                            }
+                        } finally {
+                            if (shared) unlockShared();
+                        }
+                    }
+                    if (deleteFile) new File(cacheDir, entry.name).delete();
+                } finally {
+                    lock.unlock();
+                }
+            }
+            synchronized (this) {
+                // drop the reclaimed generations from the journal
+                if (!stale.isEmpty() || !journal.isOpen()) return;
+                boolean shared = lockShared();
+                try {
+                    rebuildJournal();
+                } finally {
+                    if (shared) unlockShared();
+                }
+            }
+        }
+
+        private synchronized Entry pollStale() {
+            while (!stale.isEmpty()) {
+                Iterator<Entry> iterator = stale.get(0).iterator();
+                if (iterator.hasNext()) {
+                    Entry entry = iterator.next();
+                    iterator.remove();
+                    return entry;
+                }
+                stale.remove(0);
+            }
+            return null;
+        }
+
+        private void rebuildJournalIfRequired() {
+            if (!journal.isRebuildRequired(entries.size())) return;
+            ThreadUtils.getIoPool().execute(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (DiskCacheManager.this) {
+                        boolean shared = lockShared();
+                        try {
+                            if (journal.isRebuildRequired(entries.size())) {
+                                rebuildJournal();
+                            }
+                        } finally {
+                            if (shared) unlockShared();
+                        }
+                    }
+                }
+            });
+        }
+
+        private void trimToLimit() {
+            while (cacheCount.get() > countLimit || cacheSize.get() > sizeLimit) {
+                if (!removeOldest()) break;
+            }
+        }
+
+        /**
+         * Remove the least recently used entry, which is the head of the index. Entries whose key
+         * lock is held are being written right now, so they are skipped instead of waited for.
+         *
+         * @return {@code true}: an entry was removed<br>{@code false}: nothing can be removed
+         */
+        private boolean removeOldest() {
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                Entry oldest = iterator.next();
+                ReentrantLock lock = getKeyLock(oldest.name);
+                if (!lock.tryLock()) continue;
+                try {
+                    if (oldest.segment < 0) {
+                        File oldestFile = new File(cacheDir, oldest.name);
+                        if (oldestFile.exists() && !oldestFile.delete()) {
+                            Log.e("CacheDiskUtils", "can't delete " + oldestFile.getAbsolutePath());
+                        }
+                    }
+                    iterator.remove();
+                    markTouched(oldest.name);
+                    cacheSize.addAndGet(-oldest.size);
+                    cacheCount.addAndGet(-1);
+                    release(oldest);
+                    journalRemove(oldest.name);
+                    return true;
+                } finally {
+                    lock.unlock();
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * The size budget shared by the managers joined with a weight. It is trimmed on the IO pool
+     * without holding any manager, so managers never wait for each other.
+     */
+    private static final class GlobalBudget {
+        private static final List<DiskCacheManager> MEMBERS  = new CopyOnWriteArrayList<>();
+        private static final AtomicBoolean          TRIMMING = new AtomicBoolean();
+        private static volatile long                sMaxSize = Long.MAX_VALUE;
+
+        private static void setMaxSize(final long maxSize) {
+            sMaxSize = maxSize;
+            scheduleTrim();
+        }
+
+        private static void join(final DiskCacheManager manager) {
+            MEMBERS.add(manager);
+        }
+
+        private static void leave(final DiskCacheManager manager) {
+            MEMBERS.remove(manager);
+        }
+
+        private static long getTotalSize() {
+            long total = 0;
+            for (DiskCacheManager manager : MEMBERS) {
+                total += manager.cacheSize.get();
+            }
+            return total;
+        }
+
+        private static void scheduleTrim() {
+            if (getTotalSize() <= sMaxSize || !TRIMMING.compareAndSet(false, true)) return;
+            ThreadUtils.getIoPool().execute(new Runnable() {
                 @Override
                 public void run() {
-                    int size = 0;
-                    int count = 0;
-                    final File[] cachedFiles = cacheDir.listFiles(new FilenameFilter() {
-                        @Override
-                        public boolean accept(File dir, String name) {
-                            return name.startsWith(CACHE_PREFIX);
+                    boolean fit = false;
+                    try {
+                        fit = trim();
+                    } finally {
+                        TRIMMING.set(false);
+                    }
+                    // grown again since the last check, the next put retries a stuck trim
+                    if (fit) scheduleTrim();
+                }
+            });
+        }
+
+        /**
+         * Evict the entry idle for the longest time relative to the weight of its manager until
+         * the total size fits, the eldest entry of each manager is its candidate.
+         *
+         * @return {@code true}: it fits<br>{@code false}: nothing can be evicted
+         */
+        private static boolean trim() {
+            while (getTotalSize() > sMaxSize) {
+                final long now = System.currentTimeMillis();
+                DiskCacheManager victim = null;
+                double maxScore = -1;
+                for (DiskCacheManager manager : MEMBERS) {
+                    Entry eldest = manager.peekEldest();
+                    if (eldest == null) continue;
+                    double score = (double) (now - eldest.lastUsage + 1) / manager.budgetWeight;
+                    if (score > maxScore) {
+                        maxScore = score;
+                        victim = manager;
+                    }
+                }
+                if (victim == null || !victim.evictEldest()) return false;
+            }
+            return true;
+        }
+    }
+
+    private static final class Entry {
+        final String name;
+        final long   size;
+        final long   dueTime;
+        final long   segment;// The id of the segment holding the entry, -1 for a standalone file.
+        final long   offset; // The offset of the record in the segment.
+        long         lastUsage;
+        String       key;    // The key of the value, null if unknown.
+        boolean      keyless;// Whether the file was read and stores no key, so it isn't read again.
+        String[]     tags;   // The tags of the value, null if it has none.
+        String       blob;   // The hash of the deduplicated payload, null if the file holds it.
+
+        Entry(final String name, final long size, final long lastUsage, final long dueTime) {
+            this(name, size, lastUsage, dueTime, -1, 0);
+        }
+
+        Entry(final String name,
+              final long size,
+              final long lastUsage,
+              final long dueTime,
+              final long segment,
+              final long offset) {
+            this.name = name;
+            this.size = size;
+            this.lastUsage = lastUsage;
+            this.dueTime = dueTime;
+            this.segment = segment;
+            this.offset = offset;
+        }
+    }
+
+    private static final class Pending {
+        final String name;
+        final String key;
+        final byte   type;
+        final byte   flags;
+        final long     dueTime;
+        final byte[]   data;
+        final String[] tags;
+
+        Pending(final String name,
+                final String key,
+                final byte type,
+                final byte flags,
+                final long dueTime,
+                final byte[] data,
+                final String[] tags) {
+            this.name = name;
+            this.key = key;
+            this.type = type;
+            this.flags = flags;
+            this.dueTime = dueTime;
+            this.data = data;
+            this.tags = tags;
+        }
+    }
+
+    /**
+     * Append-only segment files packing the small entries, so they don't cost an inode, an open
+     * and a close each. Removed entries leave dead space behind, a sealed segment which is mostly
+     * dead is compacted by moving its live entries to the active segment. The active segment is
+     * sealed early once it is mostly dead, its dead space isn't counted by the size limit.
+     */
+    private static final class SegmentStore {
+        private static final String SEGMENT_PREFIX = "seg_";
+        private static final long   SEGMENT_SIZE   = 4 * 1024 * 1024;
+        private static final long   MIN_DEAD_BYTES = 64 * 1024; // The dead bytes past which the active segment may be sealed.
+
+        private final File               cacheDir;
+        private final Map<Long, Segment> segments   = new HashMap<>();
+        private final Set<Long>          compacting = new HashSet<>();
+        private final List<Segment>      unsynced   = new ArrayList<>(); // The segments sealed since the last sync.
+        private       Segment            active;
+        private       long               lastId;
+
+        private SegmentStore(final File cacheDir) {
+            this.cacheDir = cacheDir;
+        }
+
+        private static File getSegmentFile(final File cacheDir, final long id) {
+            return new File(cacheDir, SEGMENT_PREFIX + id);
+        }
+
+        /**
+         * Open the segments referenced by the loaded entries and delete the orphans.
+         *
+         * @return the ids of the referenced segments which are missing
+         */
+        private synchronized Set<Long> load(final Collection<Entry> entries) {
+            Map<Long, Long> liveBytes = new HashMap<>();
+            for (Entry entry : entries) {
+                if (entry.segment < 0 || segments.containsKey(entry.segment)) continue;
+                Long bytes = liveBytes.get(entry.segment);
+                liveBytes.put(entry.segment, (bytes == null ? 0 : bytes) + entry.size);
+            }
+            Set<Long> missing = new HashSet<>();
+            for (Map.Entry<Long, Long> live : liveBytes.entrySet()) {
+                File file = getSegmentFile(cacheDir, live.getKey());
+                Segment segment = file.exists() ? Segment.open(file, live.getKey()) : null;
+                if (segment == null) {
+                    missing.add(live.getKey());
+                    continue;
+                }
+                segment.liveBytes = live.getValue();
+                segments.put(segment.id, segment);
+            }
+            File[] files = cacheDir.listFiles(new FilenameFilter() {
+                @Override
+                public boolean accept(File dir, String name) {
+                    return name.startsWith(SEGMENT_PREFIX);
+                }
+            });
+            if (files != null) {
+                for (File file : files) {
+                    try {
+                        if (segments.containsKey(Long.parseLong(file.getName().substring(SEGMENT_PREFIX.length())))) {
+                            continue;
                         }
-                    });
-                    if (cachedFiles != null) {
-                        for (File cachedFile : cachedFiles) {
-                            size += cachedFile.length();
-                            count += 1;
-                            lastUsageDates.put(cachedFile, cachedFile.lastModified());
+                    } catch (NumberFormatException ignore) {
+                    }
+                    file.delete();
+                }
+            }
+            return missing;
+        }
+
+        private synchronized List<Long> getCompactionCandidates() {
+            List<Long> candidates = new ArrayList<>();
+            for (Segment segment : segments.values()) {
+                if (isCompactionRequired(segment) && compacting.add(segment.id)) {
+                    candidates.add(segment.id);
+                }
+            }
+            return candidates;
+        }
+
+        private boolean isCompactionRequired(final Segment segment) {
+            return segment != active && segment.liveBytes * 2 < segment.length;
+        }
+
+        /**
+         * Stop appending to the active segment, the next append starts a new one.
+         */
+        private void seal() {
+            if (active == null) return;
+            // without syncs the ones compacted meanwhile would pile up
+            Iterator<Segment> it = unsynced.iterator();
+            while (it.hasNext()) {
+                Segment segment = it.next();
+                if (segments.get(segment.id) != segment) it.remove();
+            }
+            unsynced.add(active);
+            active = null;
+        }
+
+        private synchronized void onCompacted(final long id) {
+            compacting.remove(id);
+        }
+
+        private synchronized Entry append(final String name,
+                                          final String key,
+                                          final long lastUsage,
+                                          final byte type,
+                                          final byte flags,
+                                          final long dueTime,
+                                          final byte[] data) {
+            ByteBuffer[] buffers = {DiskCacheHelper.newHeader(key, type, flags, dueTime, data.length), ByteBuffer.wrap(data)};
+            long size = buffers[0].remaining() + data.length;
+            // an interrupt would close the channel for every thread
+            boolean interrupted = Thread.interrupted();
+            try {
+                if (active == null || (active.length > 0 && active.length + size > SEGMENT_SIZE)) {
+                    seal();
+                    active = newSegment();
+                }
+                long offset = active.length;
+                long remaining = size;
+                FileChannel channel = active.channel;
+                try {
+                    while (remaining > 0) {
+                        remaining -= channel.write(buffers);
+                    }
+                } catch (IOException e) {
+                    if (channel.isOpen()) {
+                        channel.position(offset);
+                    } else if (!reopen(active, channel)) {
+                        active = null;
+                    }
+                    throw e;
+                }
+                active.length += size;
+                active.liveBytes += size;
+                return new Entry(name, size, lastUsage, dueTime, active.id, offset);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            } finally {
+                if (interrupted) Thread.currentThread().interrupt();
+            }
+        }
+
+        private Segment newSegment() throws IOException {
+            long id = Math.max(System.currentTimeMillis(), lastId + 1);
+            while (getSegmentFile(cacheDir, id).exists()) {
+                id++;
+            }
+            lastId = id;
+            Segment segment = Segment.open(getSegmentFile(cacheDir, id), id);
+            if (segment == null) throw new IOException("can't open segment " + id);
+            segments.put(id, segment);
+            return segment;
+        }
+
+        private synchronized void sync() {
+            if (active != null) unsynced.add(active);
+            boolean interrupted = Thread.interrupted();
+            try {
+                for (Segment segment : unsynced) {
+                    // a compacted one is gone
+                    if (segments.get(segment.id) != segment) continue;
+                    FileChannel channel = segment.channel;
+                    try {
+                        channel.force(false);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                        if (!channel.isOpen()) reopen(segment, channel);
+                    }
+                }
+            } finally {
+                unsynced.clear();
+                if (interrupted) Thread.currentThread().interrupt();
+            }
+        }
+
+        private Record read(final Entry entry) {
+            boolean interrupted = Thread.interrupted();
+            try {
+                // once more if an interrupt closed the channel meanwhile
+                for (int i = 0; i < 2; i++) {
+                    Segment segment;
+                    synchronized (this) {
+                        segment = segments.get(entry.segment);
+                    }
+                    if (segment == null) return null;
+                    FileChannel channel = segment.channel;
+                    try {
+                        return DiskCacheHelper.readRecord(channel, entry.offset, entry.size);
+                    } catch (ClosedChannelException e) {
+                        if (!reopen(segment, channel)) return null;
+                    }
+                }
+                return null;
+            } finally {
+                if (interrupted) Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Replace the channel of the segment which was closed by an interrupt of a thread using it,
+         * the channel of a segment which was compacted and deleted stays closed.
+         *
+         * @return {@code true}: the segment is still stored<br>{@code false}: otherwise
+         */
+        private synchronized boolean reopen(final Segment segment, final FileChannel closed) {
+            if (segments.get(segment.id) != segment) return false;
+            if (segment.channel != closed) return true;
+            try {
+                segment.reopen();
+                return true;
+            } catch (IOException e) {
+                e.printStackTrace();
+                return false;
+            }
+        }
+
+        /**
+         * Release the space of a removed entry.
+         *
+         * @return {@code true}: the segment should be compacted<br>{@code false}: otherwise
+         */
+        private synchronized boolean release(final Entry entry) {
+            Segment segment = segments.get(entry.segment);
+            if (segment == null) return false;
+            segment.liveBytes -= entry.size;
+            if (segment == active) {
+                // else its dead bytes stay until it fills up, however small the size limit is
+                if (segment.length - segment.liveBytes < MIN_DEAD_BYTES || segment.liveBytes * 2 >= segment.length) {
+                    return false;
+                }
+                seal();
+            }
+            if (segment.liveBytes <= 0) {
+                segments.remove(segment.id);
+                CloseUtils.closeIOQuietly(segment.channel);
+                segment.file.delete();
+                return false;
+            }
+            return isCompactionRequired(segment) && compacting.add(segment.id);
+        }
+    }
+
+    private static final class Segment {
+        final    long        id;
+        final    File        file;
+        volatile FileChannel channel;
+        long                 length;
+        long                 liveBytes;
+
+        private Segment(final long id, final File file, final FileChannel channel, final long length) {
+            this.id = id;
+            this.file = file;
+            this.channel = channel;
+            this.length = length;
+        }
+
+        private static Segment open(final File file, final long id) {
+            try {
+                FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+                long length = channel.size();
+                channel.position(length);
+                return new Segment(id, file, channel, length);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            }
+        }
+
+        /**
+         * Open the file again, a torn append is cut off. The file is positioned without the
+         * channel, which an interrupted thread would close again.
+         */
+        private void reopen() throws IOException {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(length);
+                raf.seek(length);
+            } catch (IOException e) {
+                CloseUtils.closeIOQuietly(raf);
+                throw e;
+            }
+            channel = raf.getChannel();
+        }
+    }
+
+    /**
+     * Read-only pack of values built ahead, see {@link CacheDiskUtils#buildPack(File, Map)}. The
+     * file is mapped and looked up in place, the slots are sorted by the unsigned bytes of the
+     * UTF-8 keys.
+     */
+    private static final class CachePack {
+
+        private static final int  MAGIC       = 0xCDC8CA9C;
+        private static final byte VERSION     = 1;
+        private static final int  HEADER_LEN  = 12;
+        private static final int  SLOT_LEN    = 16;
+        private static final int  MAX_KEY_LEN = 0xFFFF; // The max bytes of a key, its length is an unsigned short.
+
+        private static final CachePack EMPTY = new CachePack(ByteBuffer.allocate(0), 0);
+
+        private final ByteBuffer buffer;
+        private final int        count;
+
+        private CachePack(final ByteBuffer buffer, final int count) {
+            this.buffer = buffer;
+            this.count = count;
+        }
+
+        private static CachePack open(final File file) {
+            FileChannel fc = null;
+            try {
+                fc = new RandomAccessFile(file, "r").getChannel();
+                // the mapping outlives the channel
+                return open(fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size()), file.getPath());
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            } finally {
+                CloseUtils.closeIOQuietly(fc);
+            }
+        }
+
+        private static CachePack openAsset(final String name) {
+            AssetFileDescriptor afd = null;
+            FileInputStream fis = null;
+            try {
+                afd = Utils.getApp().getAssets().openFd(name);
+                fis = afd.createInputStream();
+                return open(fis.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                        afd.getStartOffset(), afd.getLength()), name);
+            } catch (FileNotFoundException e) {
+                // compressed assets have no descriptor
+                InputStream is = null;
+                try {
+                    is = Utils.getApp().getAssets().open(name);
+                    byte[] bytes = UtilsBridge.inputStream2Bytes(is);
+                    return bytes == null ? null : open(ByteBuffer.wrap(bytes), name);
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                    return null;
+                } finally {
+                    CloseUtils.closeIO(is);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            } finally {
+                CloseUtils.closeIOQuietly(fis, afd);
+            }
+        }
+
+        private static CachePack open(final ByteBuffer buffer, final String name) {
+            int size = buffer.limit();
+            if (size >= HEADER_LEN && buffer.getInt(0) == MAGIC && buffer.get(4) <= VERSION) {
+                int count = buffer.getInt(8);
+                if (count >= 0 && count <= (size - HEADER_LEN) / SLOT_LEN) return new CachePack(buffer, count);
+            }
+            Log.e("CacheDiskUtils", "pack " + name + " is broken");
+            return null;
+        }
+
+        /**
+         * Write the pack of the keys, which have the type prefix, and their values into a tmp
+         * file which then replaces the file.
+         */
+        private static boolean write(final File file, final List<String> keys, final List<byte[]> data) {
+            final byte[][] keyBytes = new byte[keys.size()][];
+            Integer[] order = new Integer[keys.size()];
+            long keysLen = 0;
+            long dataLen = 0;
+            for (int i = 0; i < order.length; i++) {
+                keyBytes[i] = getKeyBytes(keys.get(i).substring(3));
+                if (keyBytes[i] == null) {
+                    Log.e("CacheDiskUtils", "can't pack a key over " + MAX_KEY_LEN + " bytes into " + file.getPath());
+                    return false;
+                }
+                order[i] = i;
+                keysLen += keyBytes[i].length;
+                dataLen += data.get(i).length;
+            }
+            long indexLen = HEADER_LEN + (long) SLOT_LEN * order.length + keysLen;
+            if (indexLen + dataLen > Integer.MAX_VALUE) {
+                Log.e("CacheDiskUtils", "pack " + file.getPath() + " is too big to map");
+                return false;
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer o1, Integer o2) {
+                    return compareBytes(keyBytes[o1], keyBytes[o2]);
+                }
+            });
+            ByteBuffer index = ByteBuffer.allocate((int) indexLen);
+            index.putInt(MAGIC).put(VERSION).put(new byte[3]).putInt(order.length);
+            int keyOffset = HEADER_LEN + SLOT_LEN * order.length;
+            long dataOffset = indexLen;
+            for (int i : order) {
+                index.putInt(keyOffset)
+                        .putShort((short) keyBytes[i].length)
+                        .put(DiskCacheHelper.getTypeTag(keys.get(i)))
+                        .put((byte) 0)
+                        .putInt((int) dataOffset)
+                        .putInt(data.get(i).length);
+                keyOffset += keyBytes[i].length;
+                dataOffset += data.get(i).length;
+            }
+            for (int i : order) {
+                index.put(keyBytes[i]);
+            }
+            File tmp = new File(file.getPath() + ".tmp");
+            OutputStream os = null;
+            try {
+                os = new BufferedOutputStream(new FileOutputStream(tmp, false));
+                os.write(index.array());
+                for (int i : order) {
+                    os.write(data.get(i));
+                }
+                os.close();
+                os = null;
+                if (tmp.renameTo(file)) return true;
+                Log.e("CacheDiskUtils", "can't rename " + tmp.getPath());
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                CloseUtils.closeIO(os);
+            }
+            tmp.delete();
+            return false;
+        }
+
+        private static int compareBytes(final byte[] a, final byte[] b) {
+            int length = Math.min(a.length, b.length);
+            for (int i = 0; i < length; i++) {
+                int diff = (a[i] & 0xFF) - (b[i] & 0xFF);
+                if (diff != 0) return diff;
+            }
+            return a.length - b.length;
+        }
+
+        /**
+         * Return the bytes of the key, null if they don't fit in a slot.
+         */
+        private static byte[] getKeyBytes(final String key) {
+            byte[] bytes = UtilsBridge.string2Bytes(key);
+            return bytes == null || bytes.length > MAX_KEY_LEN ? null : bytes;
+        }
+
+        private boolean contains(final String key) {
+            return indexOf(getKeyBytes(key)) >= 0;
+        }
+
+        /**
+         * Return the record of the key, which has no type prefix, null if there is none. The
+         * value is copied out of the mapping.
+         */
+        private Record read(final String key) {
+            int i = indexOf(getKeyBytes(key));
+            if (i < 0) return null;
+            int slot = HEADER_LEN + SLOT_LEN * i;
+            int offset = buffer.getInt(slot + 8);
+            int length = buffer.getInt(slot + 12);
+            if (offset < 0 || length < 0 || offset > buffer.limit() - length) return null;
+            byte[] data = new byte[length];
+            // the position of a duplicate is its own
+            ByteBuffer values = buffer.duplicate();
+            values.position(offset);
+            values.get(data);
+            return new Record(buffer.get(slot + 6), buffer.get(slot + 7), -1, data, 0, key);
+        }
+
+        /**
+         * Binary search on the mapped slots with absolute reads only, so lookups may run
+         * concurrently.
+         */
+        private int indexOf(final byte[] key) {
+            if (key == null) return -1;
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = compareKey(HEADER_LEN + SLOT_LEN * mid, key);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+
+        private int compareKey(final int slot, final byte[] key) {
+            int offset = buffer.getInt(slot);
+            int length = buffer.getShort(slot + 4) & 0xFFFF;
+            if (offset < 0 || offset > buffer.limit() - length) return 1;
+            int common = Math.min(length, key.length);
+            for (int i = 0; i < common; i++) {
+                int diff = (buffer.get(offset + i) & 0xFF) - (key[i] & 0xFF);
+                if (diff != 0) return diff;
+            }
+            return length - key.length;
+        }
+    }
+
+    /**
+     * Append-only journal of the disk cache index, replayed instead of listing the cache directory.
+     * <pre>
+     *     cdu-journal
+     *     1
+     *
+     *     CLEAN cdu_1045 30 1526542102000 -1
+     *     CLEAN cdu_2093 30 1526542103000 -1 1526542103000 0
+     *     KEY cdu_2093 feed%3Apage%3A2
+     *     KEY cdu_3136 !
+     *     READ cdu_1045 1526542105000
+     *     TAG cdu_2093 feed%3A42 home
+     *     REMOVE cdu_1045
+     *     INVALIDATE
+     * </pre>
+     * A CLEAN line of a packed entry ends with its segment id and offset, the one of a deduplicated
+     * entry with the hash of its payload. A KEY line follows the CLEAN line with the url-encoded
+     * key, or "!" if the file stores none, then a TAG line with the url-encoded tags of a tagged
+     * entry. INVALIDATE starts a new generation, the entries before it are stale until their files
+     * are reclaimed.
+     */
+    private static final class DiskJournal {
+
+        private static final String JOURNAL_FILE        = "journal";
+        private static final String JOURNAL_FILE_TEMP   = "journal.tmp";
+        private static final String JOURNAL_FILE_LOCK   = "journal.lock";
+        private static final String JOURNAL_FILE_STALE  = "journal.stale";
+        private static final String MAGIC               = "cdu-journal";
+        private static final String VERSION             = "1";
+        private static final String CLEAN               = "CLEAN";
+        private static final String READ                = "READ";
+        private static final String REMOVE              = "REMOVE";
+        private static final String TAG                 = "TAG";
+        private static final String KEY                 = "KEY";
+        private static final String NO_KEY              = "!";
+        private static final String INVALIDATE          = "INVALIDATE";
+        private static final int    REDUNDANT_OP_LIMIT  = 2000;
+        private static final int    SHARED_READS_LIMIT  = 8192; // The chars of READ lines which take the shared lock.
+
+        private final File             journalFile;
+        private final File             journalFileTmp;
+        private       FileOutputStream out;
+        private       Writer           writer;
+        private       int              redundantOpCount;
+        private       int              flushDeferred; // The count of the batches in progress.
+        private final File             lockFile;
+        private final File             staleFile;  // Exists while the journal may have stale entries.
+        private       SharedLock       sharedLock;
+        private       int              lockHolds;
+        private       long             generation = -1;
+        private       long             consumed;   // The length of the journal this process has applied.
+        private final StringBuilder    sharedReads = new StringBuilder(); // The READ lines waiting for the shared lock.
+
+        private DiskJournal(final File cacheDir) {
+            journalFile = new File(cacheDir, JOURNAL_FILE);
+            journalFileTmp = new File(cacheDir, JOURNAL_FILE_TEMP);
+            lockFile = new File(cacheDir, JOURNAL_FILE_LOCK);
+            staleFile = new File(cacheDir, JOURNAL_FILE_STALE);
+        }
+
+        /**
+         * Return whether the cache directory may still hold the files of invalidated entries,
+         * without reading the journal.
+         */
+        private boolean hasStale() {
+            return staleFile.exists();
+        }
+
+        private void markStale(final boolean stale) {
+            if (!stale) {
+                staleFile.delete();
+                return;
+            }
+            try {
+                staleFile.createNewFile();
+            } catch (IOException e) {
+                Log.e("CacheDiskUtils", "create " + staleFile + " failed", e);
+            }
+        }
+
+        private void openLock() {
+            try {
+                sharedLock = SharedLock.get(lockFile);
+            } catch (IOException e) {
+                Log.e("CacheDiskUtils", "open journal lock failed", e);
+            }
+        }
+
+        /**
+         * Take the lock shared by the processes, reentrant. The generation in the lock file
+         * changes whenever a process rebuilds the journal.
+         *
+         * @return the lines appended by other processes since this one last held the lock, or null
+         * if the journal was rebuilt and has to be read again
+         */
+        private List<String> lock() {
+            if (lockHolds++ > 0 || sharedLock == null) return Collections.emptyList();
+            try {
+                sharedLock.lock();
+                long[] state = sharedLock.readState();
+                if (state[0] != generation) {
+                    generation = state[0];
+                    // the writer may append to the replaced file
+                    if (writer != null) open();
+                    consumed = journalFile.length();
+                    writeSharedReads();
+                    return null;
+                }
+                long end = journalFile.length();
+                // before the lines the holder appends, which are newer
+                writeSharedReads();
+                if (end <= consumed) return Collections.emptyList();
+                List<String> lines = readLines(consumed, end);
+                consumed = end;
+                redundantOpCount += lines.size();
+                return lines;
+            } catch (IOException e) {
+                Log.e("CacheDiskUtils", "lock journal failed", e);
+                return Collections.emptyList();
+            }
+        }
+
+        private void unlock() {
+            if (--lockHolds > 0 || sharedLock == null || !sharedLock.isHeldByCurrentThread()) return;
+            try {
+                if (writer != null) writer.flush();
+                consumed = journalFile.length();
+                sharedLock.writeState(generation, consumed);
+            } catch (IOException e) {
+                Log.e("CacheDiskUtils", "write journal state failed", e);
+            } finally {
+                sharedLock.unlock();
+            }
+        }
+
+        private boolean isLocked() {
+            return lockHolds > 0 && sharedLock != null && sharedLock.isHeldByCurrentThread();
+        }
+
+        /**
+         * Return whether other processes changed the journal, read without the lock.
+         */
+        private boolean isStale() {
+            if (sharedLock == null) return false;
+            try {
+                long[] state = sharedLock.readState();
+                return state[0] != generation || state[1] != consumed;
+            } catch (IOException e) {
+                return true;
+            }
+        }
+
+        private List<String> readLines(final long start, final long end) throws IOException {
+            RandomAccessFile raf = new RandomAccessFile(journalFile, "r");
+            try {
+                byte[] bytes = new byte[(int) (end - start)];
+                raf.seek(start);
+                raf.readFully(bytes);
+                List<String> lines = new ArrayList<>();
+                for (String line : new String(bytes, "US-ASCII").split("\n")) {
+                    if (!line.isEmpty()) lines.add(line);
+                }
+                return lines;
+            } finally {
+                CloseUtils.closeIOQuietly(raf);
+            }
+        }
+
+        /**
+         * Replay the journal.
+         *
+         * @param stale The entries of the generations before the last invalidation are added to it.
+         * @return the live entries, or null if the journal is unusable
+         */
+        private Map<String, Entry> read(final List<Collection<Entry>> stale) {
+            if (!journalFile.exists()) return null;
+            BufferedReader reader = null;
+            try {
+                reader = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), "US-ASCII"), 8192);
+                if (!MAGIC.equals(reader.readLine())
+                        || !VERSION.equals(reader.readLine())
+                        || !"".equals(reader.readLine())) {
+                    return null;
+                }
+                Map<String, Entry> loaded = DiskCacheManager.newLruIndex();
+                int lineCount = 0;
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (isInvalidate(line)) {
+                        if (!loaded.isEmpty()) stale.add(loaded.values());
+                        loaded = DiskCacheManager.newLruIndex();
+                        lineCount++;
+                        continue;
+                    }
+                    if (!readLine(line, loaded)) {
+                        // torn write of the last line, recover by rebuilding
+                        redundantOpCount = Integer.MAX_VALUE;
+                        break;
+                    }
+                    // KEY and TAG lines go with their CLEAN line
+                    if (!isTag(line) && !isKey(line)) lineCount++;
+                }
+                if (redundantOpCount != Integer.MAX_VALUE) {
+                    redundantOpCount = lineCount - loaded.size();
+                }
+                return loaded;
+            } catch (IOException e) {
+                Log.e("CacheDiskUtils", "read journal failed", e);
+                return null;
+            } finally {
+                CloseUtils.closeIOQuietly(reader);
+            }
+        }
+
+        private static boolean isInvalidate(final String line) {
+            return INVALIDATE.equals(line);
+        }
+
+        private static boolean isTag(final String line) {
+            return line.startsWith(TAG + ' ');
+        }
+
+        private static boolean isKey(final String line) {
+            return line.startsWith(KEY + ' ');
+        }
+
+        private static boolean readLine(final String line, final Map<String, Entry> loaded) {
+            String[] parts = line.split(" ");
+            try {
+                if (CLEAN.equals(parts[0]) && parts.length >= 5 && parts.length <= 7) {
+                    Entry entry = new Entry(parts[1],
+                            Long.parseLong(parts[2]),
+                            Long.parseLong(parts[3]),
+                            Long.parseLong(parts[4]),
+                            parts.length == 7 ? Long.parseLong(parts[5]) : -1,
+                            parts.length == 7 ? Long.parseLong(parts[6]) : 0);
+                    if (parts.length == 6) entry.blob = parts[5];
+                    loaded.remove(parts[1]);
+                    loaded.put(parts[1], entry);
+                    return true;
+                }
+                if (READ.equals(parts[0]) && parts.length == 3) {
+                    Entry entry = loaded.remove(parts[1]);
+                    if (entry != null) {
+                        entry.lastUsage = Long.parseLong(parts[2]);
+                        loaded.put(parts[1], entry);
+                    }
+                    return true;
+                }
+                if (REMOVE.equals(parts[0]) && parts.length == 2) {
+                    loaded.remove(parts[1]);
+                    return true;
+                }
+                if (KEY.equals(parts[0]) && (parts.length == 2 || parts.length == 3)) {
+                    Entry entry = loaded.get(parts[1]);
+                    if (entry == null) return true;
+                    // url-encoded keys never hold it
+                    if (parts.length == 3 && NO_KEY.equals(parts[2])) {
+                        entry.keyless = true;
+                        return true;
+                    }
+                    // the empty key leaves the last part out
+                    entry.key = parts.length == 3 ? UtilsBridge.urlDecode(parts[2]) : "";
+                    return true;
+                }
+                if (TAG.equals(parts[0]) && parts.length >= 3) {
+                    Entry entry = loaded.get(parts[1]);
+                    if (entry != null) {
+                        String[] tags = new String[parts.length - 2];
+                        for (int i = 0; i < tags.length; i++) {
+                            tags[i] = UtilsBridge.urlDecode(parts[i + 2]);
                         }
-                        cacheSize.getAndAdd(size);
-                        cacheCount.getAndAdd(count);
+                        entry.tags = tags;
                     }
+                    return true;
                 }
-            });
-            mThread.start();
+            } catch (NumberFormatException ignore) {
+            }
+            return false;
         }
 
-        private long getCacheSize() {
-            wait2InitOk();
-            return cacheSize.get();
+        private boolean isOpen() {
+            return writer != null;
         }
 
-        private int getCacheCount() {
-            wait2InitOk();
-            return cacheCount.get();
+        private void open() {
+            CloseUtils.closeIOQuietly(writer);
+            try {
+                out = new FileOutputStream(journalFile, true);
+                writer = new BufferedWriter(new OutputStreamWriter(out, "US-ASCII"));
+            } catch (IOException e) {
+                Log.e("CacheDiskUtils", "open journal failed", e);
+            }
         }
 
-        private File getFileBeforePut(final String key) {
-            wait2InitOk();
-            File file = new File(cacheDir, getCacheNameByKey(key));
-            if (file.exists()) {
-                cacheCount.addAndGet(-1);
-                cacheSize.addAndGet(-file.length());
+        /**
+         * Defer flushing the appended lines until {@link #flush(boolean)}, used by batched writes.
+         * Batches may overlap, the lines are deferred until the last one ends.
+         */
+        private void setFlushDeferred(final boolean flushDeferred) {
+            this.flushDeferred += flushDeferred ? 1 : -1;
+        }
+
+        private void flush(final boolean sync) {
+            if (writer == null) return;
+            try {
+                writer.flush();
+                if (sync) out.getFD().sync();
+            } catch (IOException e) {
+                Log.e("CacheDiskUtils", "flush journal failed", e);
             }
-            return file;
         }
 
-        private void wait2InitOk() {
+        private boolean isRebuildRequired(final int entryCount) {
+            return redundantOpCount >= REDUNDANT_OP_LIMIT && redundantOpCount >= entryCount;
+        }
+
+        /**
+         * Compact the journal to one line per entry.
+         */
+        private void rebuild(final Collection<Entry> stale, final Collection<Entry> entries) {
+            CloseUtils.closeIOQuietly(writer);
+            writer = null;
+            // the usages are in the CLEAN lines
+            sharedReads.setLength(0);
+            Writer tmpWriter = null;
             try {
-                mThread.join();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+                tmpWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalFileTmp), "US-ASCII"));
+                tmpWriter.write(MAGIC + "\n" + VERSION + "\n\n");
+                if (!stale.isEmpty()) {
+                    markStale(true);
+                    for (Entry entry : stale) {
+                        tmpWriter.write(cleanLine(entry));
+                    }
+                    tmpWriter.write(INVALIDATE + "\n");
+                }
+                for (Entry entry : entries) {
+                    tmpWriter.write(cleanLine(entry));
+                }
+                tmpWriter.close();
+                tmpWriter = null;
+                if (!journalFileTmp.renameTo(journalFile)) {
+                    Log.e("CacheDiskUtils", "rename journal failed");
+                } else if (stale.isEmpty()) {
+                    markStale(false);
+                }
+                // tell the other processes to read it again
+                if (isLocked()) generation++;
+                redundantOpCount = 0;
+            } catch (IOException e) {
+                Log.e("CacheDiskUtils", "rebuild journal failed", e);
+            } finally {
+                CloseUtils.closeIOQuietly(tmpWriter);
             }
+            open();
         }
 
-        private File getFileIfExists(final String key) {
-            File file = new File(cacheDir, getCacheNameByKey(key));
-            if (!file.exists()) return null;
-            return file;
+        private void writeClean(final Entry entry) {
+            append(cleanLine(entry));
         }
 
-        private String getCacheNameByKey(final String key) {
-            return CACHE_PREFIX + key.substring(0, 3) + key.substring(3).hashCode();
+        /**
+         * Append a READ line without flushing it, it goes out with the next flushed line or a full
+         * buffer. A crash only loses usages. Shared with other processes, the line is kept until
+         * the lock is taken next, so hits don't wait for other processes.
+         *
+         * @return {@code true}: enough lines are kept to take the lock for them<br>{@code false}: otherwise
+         */
+        private boolean writeRead(final Entry entry) {
+            if (writer == null) return false;
+            String line = READ + ' ' + entry.name + ' ' + entry.lastUsage + '\n';
+            redundantOpCount++;
+            if (sharedLock != null && !isLocked()) {
+                boolean below = sharedReads.length() < SHARED_READS_LIMIT;
+                sharedReads.append(line);
+                return below && sharedReads.length() >= SHARED_READS_LIMIT;
+            }
+            try {
+                writer.write(line);
+            } catch (IOException e) {
+                Log.e("CacheDiskUtils", "write journal failed", e);
+            }
+            return false;
         }
 
-        private void put(final File file) {
-            cacheCount.addAndGet(1);
-            cacheSize.addAndGet(file.length());
-            while (cacheCount.get() > countLimit || cacheSize.get() > sizeLimit) {
-                cacheSize.addAndGet(-removeOldest());
-                cacheCount.addAndGet(-1);
+        /**
+         * Append the READ lines kept for the lock, the caller holds it.
+         */
+        private void writeSharedReads() {
+            if (sharedReads.length() == 0 || writer == null) return;
+            try {
+                writer.write(sharedReads.toString());
+            } catch (IOException e) {
+                Log.e("CacheDiskUtils", "write journal failed", e);
             }
+            sharedReads.setLength(0);
         }
 
-        private void updateModify(final File file) {
-            Long millis = System.currentTimeMillis();
-            file.setLastModified(millis);
-            lastUsageDates.put(file, millis);
+        private void writeRemove(final String name) {
+            append(REMOVE + ' ' + name + '\n');
         }
 
-        private boolean removeByKey(final String key) {
-            File file = getFileIfExists(key);
-            if (file == null) return true;
-            if (!file.delete()) return false;
-            cacheSize.addAndGet(-file.length());
-            cacheCount.addAndGet(-1);
-            lastUsageDates.remove(file);
-            return true;
+        private void writeInvalidate() {
+            // before the line, so a reader never misses it
+            markStale(true);
+            append(INVALIDATE + "\n");
         }
 
-        private boolean clear() {
-            File[] files = cacheDir.listFiles(new FilenameFilter() {
-                @Override
-                public boolean accept(File dir, String name) {
-                    return name.startsWith(CACHE_PREFIX);
-                }
-            });
-            if (files == null || files.length <= 0) return true;
-            boolean flag = true;
-            for (File file : files) {
-                if (!file.delete()) {
-                    flag = false;
-                    continue;
+        private static String cleanLine(final Entry entry) {
+            String line = CLEAN + ' ' + entry.name + ' ' + entry.size + ' ' + entry.lastUsage + ' ' + entry.dueTime;
+            if (entry.segment >= 0) {
+                line += " " + entry.segment + ' ' + entry.offset;
+            } else if (entry.blob != null) {
+                line += " " + entry.blob;
+            }
+            StringBuilder sb = new StringBuilder(line).append('\n');
+            if (entry.key != null) {
+                sb.append(KEY).append(' ').append(entry.name).append(' ').append(encode(entry.key)).append('\n');
+            } else if (entry.keyless) {
+                sb.append(KEY).append(' ').append(entry.name).append(' ').append(NO_KEY).append('\n');
+            }
+            if (entry.tags == null) return sb.toString();
+            sb.append(TAG).append(' ').append(entry.name);
+            for (String tag : entry.tags) {
+                sb.append(' ').append(encode(tag));
+            }
+            return sb.append('\n').toString();
+        }
+
+        private static String encode(final String s) {
+            // urlEncode turns a space into a plus, which urlDecode keeps
+            return UtilsBridge.urlEncode(s).replace("+", "%20");
+        }
+
+        private void append(final String line) {
+            if (writer == null) return;
+            try {
+                writer.write(line);
+                if (flushDeferred == 0) writer.flush();
+                redundantOpCount++;
+            } catch (IOException e) {
+                Log.e("CacheDiskUtils", "write journal failed", e);
+            }
+        }
+    }
+
+    /**
+     * The file lock of a shared journal with the state of the journal, generation(8) + length(8).
+     * A process can't lock a file twice, so the managers of a directory in a process share one.
+     */
+    private static final class SharedLock {
+        private static final Map<String, SharedLock> LOCKS = new HashMap<>();
+
+        private final ReentrantLock mutex = new ReentrantLock();
+        private final FileChannel   channel;
+        private       FileLock      fileLock;
+
+        private SharedLock(final FileChannel channel) {
+            this.channel = channel;
+        }
+
+        private static synchronized SharedLock get(final File file) throws IOException {
+            String path = file.getCanonicalPath();
+            SharedLock lock = LOCKS.get(path);
+            if (lock == null) {
+                lock = new SharedLock(new RandomAccessFile(file, "rw").getChannel());
+                LOCKS.put(path, lock);
+            }
+            return lock;
+        }
+
+        private void lock() throws IOException {
+            mutex.lock();
+            try {
+                fileLock = channel.lock();
+            } catch (IOException e) {
+                mutex.unlock();
+                throw e;
+            }
+        }
+
+        private boolean isHeldByCurrentThread() {
+            return mutex.isHeldByCurrentThread();
+        }
+
+        private void unlock() {
+            try {
+                fileLock.release();
+            } catch (IOException e) {
+                Log.e("CacheDiskUtils", "release journal lock failed", e);
+            }
+            fileLock = null;
+            mutex.unlock();
+        }
+
+        private long[] readState() throws IOException {
+            ByteBuffer state = ByteBuffer.allocate(16);
+            while (state.hasRemaining()) {
+                if (channel.read(state, state.position()) < 0) return new long[]{0, 0};
+            }
+            state.flip();
+            return new long[]{state.getLong(), state.getLong()};
+        }
+
+        private void writeState(final long generation, final long length) throws IOException {
+            ByteBuffer state = ByteBuffer.allocate(16);
+            state.putLong(generation).putLong(length).flip();
+            while (state.hasRemaining()) {
+                channel.write(state, state.position());
+            }
+        }
+    }
+
+    private static final class DiskCacheHelper {
+
+        static final int TIME_INFO_LEN = 14;
+
+        /**
+         * magic(4) + version(1) + type(1) + flags(1) + reserved(1) + due time(8) + payload length(8),
+         * then since version 2 the key: key length(2) + key
+         */
+        static final int  HEADER_LEN     = 24;
+        static final int  KEY_LENGTH_LEN = 2;
+        static final int  LENGTH_OFFSET  = 16;
+        static final int  PREFIX_LEN     = 256; // The bytes read ahead for the header, usually with the key.
+        static final int  MAGIC          = 0xCDC8CA5E;
+        static final byte HEADER_VERSION = 2;
+        static final byte FLAG_DEFLATE   = 1;
+        static final byte FLAG_REF       = 2; // The data is the hash of a deduplicated payload.
+
+        private static final int            CODER_POOL_SIZE = 4;
+        private static final List<Deflater> DEFLATERS       = new ArrayList<>();
+        private static final List<Inflater> INFLATERS       = new ArrayList<>();
+
+        private static final ThreadLocal<MessageDigest> MD5 = new ThreadLocal<MessageDigest>() {
+            @Override
+            protected MessageDigest initialValue() {
+                try {
+                    return MessageDigest.getInstance("MD5");
+                } catch (NoSuchAlgorithmException e) {
+                    e.printStackTrace();
+                    return null;
                 }
-                cacheSize.addAndGet(-file.length());
-                cacheCount.addAndGet(-1);
-                lastUsageDates.remove(file);
             }
-            if (flag) {
-                lastUsageDates.clear();
-                cacheSize.set(0);
-                cacheCount.set(0);
+        };
+
+        private static final String[] TYPES = {
+                TYPE_BYTE, TYPE_STRING, TYPE_JSON_OBJECT, TYPE_JSON_ARRAY,
+                TYPE_BITMAP, TYPE_DRAWABLE, TYPE_PARCELABLE, TYPE_SERIALIZABLE, TYPE_RAW_BITMAP
+        };
+
+        private static long getDueTime(final int seconds) {
+            return seconds < 0 ? -1 : System.currentTimeMillis() + seconds * 1000L;
+        }
+
+        /**
+         * Return the seconds left until the due time, capped so they fit an int in milliseconds.
+         */
+        private static int getSaveTime(final long dueTime) {
+            if (dueTime == -1) return -1;
+            return (int) Math.min((dueTime - System.currentTimeMillis()) / 1000, Integer.MAX_VALUE / 1000);
+        }
+
+        /**
+         * Return the distinct non-empty tags, null if there is none.
+         */
+        private static String[] getTags(final String[] tags) {
+            Set<String> distinct = new LinkedHashSet<>();
+            for (String tag : tags) {
+                if (tag != null && tag.length() > 0) distinct.add(tag);
+            }
+            return distinct.isEmpty() ? null : distinct.toArray(new String[0]);
+        }
+
+        private static boolean hasTag(final String[] tags, final String tag) {
+            if (tags == null) return false;
+            for (String t : tags) {
+                if (t.equals(tag)) return true;
+            }
+            return false;
+        }
+
+        /**
+         * Return whether the record is of the type of the key, records without type are of any.
+         */
+        private static boolean isTypeOf(final Record record, final String key) {
+            return record.type == 0 || record.type == getTypeTag(key);
+        }
+
+        /**
+         * Return the type tag of the key, 0 if unknown.
+         */
+        private static byte getTypeTag(final String key) {
+            for (int i = 0; i < TYPES.length; i++) {
+                if (key.startsWith(TYPES[i])) return (byte) (i + 1);
+            }
+            return 0;
+        }
+
+        /**
+         * Return the type prefix of the tag, null if unknown.
+         */
+        private static String getType(final byte tag) {
+            return tag > 0 && tag <= TYPES.length ? TYPES[tag - 1] : null;
+        }
+
+        /**
+         * Return the length of the header with the key section.
+         */
+        private static int getHeaderLen(final String key) {
+            return HEADER_LEN + KEY_LENGTH_LEN + getKeyBytes(key).length;
+        }
+
+        /**
+         * Return the key as stored in the header, keys too long to store are left out.
+         */
+        private static byte[] getKeyBytes(final String key) {
+            byte[] bytes = key == null ? null : UtilsBridge.string2Bytes(key);
+            return bytes == null || bytes.length > 0xFFFF ? new byte[0] : bytes;
+        }
+
+        /**
+         * Return whether the record is of the key, records without key are of any.
+         */
+        private static boolean isKeyOf(final Record record, final String key) {
+            return record.key == null || record.key.equals(key);
+        }
+
+        /**
+         * Return the hash of the content of a deduplicated payload.
+         */
+        private static String hash(final byte[] data) {
+            byte[] hash = UtilsBridge.hashTemplate(data, "SHA-1");
+            return hash == null ? null : UtilsBridge.bytes2HexString(hash);
+        }
+
+        /**
+         * Return the hex of the 128-bit digest of the key, null if it can't be computed.
+         */
+        private static String digest(final String key) {
+            MessageDigest md = MD5.get();
+            if (md == null) return null;
+            return UtilsBridge.bytes2HexString(md.digest(UtilsBridge.string2Bytes(key)));
+        }
+
+        private static ByteBuffer newHeader(final String key,
+                                            final byte type,
+                                            final byte flags,
+                                            final long dueTime,
+                                            final long length) {
+            byte[] keyBytes = getKeyBytes(key);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LEN + KEY_LENGTH_LEN + keyBytes.length);
+            header.putInt(MAGIC)
+                    .put(HEADER_VERSION)
+                    .put(type)
+                    .put(flags)
+                    .put((byte) 0)
+                    .putLong(dueTime)
+                    .putLong(length)
+                    .putShort((short) keyBytes.length)
+                    .put(keyBytes);
+            header.flip();
+            return header;
+        }
+
+        /**
+         * Write the header and the payload with one gathering write, the payload isn't copied.
+         */
+        private static boolean writeRecord(final File file,
+                                           final String key,
+                                           final byte type,
+                                           final byte flags,
+                                           final long dueTime,
+                                           final byte[] data,
+                                           final boolean force) {
+            FileChannel fc = null;
+            try {
+                fc = new FileOutputStream(file, false).getChannel();
+                ByteBuffer[] buffers = {newHeader(key, type, flags, dueTime, data.length), ByteBuffer.wrap(data)};
+                long remaining = buffers[0].remaining() + data.length;
+                while (remaining > 0) {
+                    remaining -= fc.write(buffers);
+                }
+                if (force) fc.force(true);
+                return true;
+            } catch (IOException e) {
+                e.printStackTrace();
+                return false;
+            } finally {
+                CloseUtils.closeIOQuietly(fc);
             }
-            return flag;
         }
 
         /**
-         * Remove the oldest files.
+         * Read the prefix of the file, which holds the header and usually the key, then the rest of
+         * the payload straight into the returned array.
          *
-         * @return the size of oldest files, in bytes
+         * @return the record, or null if the file is unreadable or not completely written
          */
-        private long removeOldest() {
-            if (lastUsageDates.isEmpty()) return 0;
-            Long oldestUsage = Long.MAX_VALUE;
-            File oldestFile = null;
-            Set<Map.Entry<File, Long>> entries = lastUsageDates.entrySet();
-            synchronized (lastUsageDates) {
-                for (Map.Entry<File, Long> entry : entries) {
-                    Long lastValueUsage = entry.getValue();
-                    if (lastValueUsage < oldestUsage) {
-                        oldestUsage = lastValueUsage;
-                        oldestFile = entry.getKey();
-                    }
+        private static Record readRecord(final File file) {
+            FileChannel fc = null;
+            try {
+                fc = new RandomAccessFile(file, "r").getChannel();
+                long size = fc.size();
+                ByteBuffer prefix = ByteBuffer.allocate((int) Math.min(size, PREFIX_LEN));
+                if (!readFully(fc, prefix, 0)) return null;
+                if (size < HEADER_LEN || prefix.getInt(0) != MAGIC) {
+                    byte[] all = new byte[(int) size];
+                    System.arraycopy(prefix.array(), 0, all, 0, prefix.capacity());
+                    ByteBuffer rest = ByteBuffer.wrap(all, prefix.capacity(), all.length - prefix.capacity());
+                    if (!readFully(fc, rest, prefix.capacity())) return null;
+                    return readLegacyRecord(all);
                 }
+                return readRecord(fc, prefix, 0, size);
+            } catch (FileNotFoundException e) {
+                // renamed or deleted meanwhile, the caller looks it up again
+                return null;
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            } finally {
+                CloseUtils.closeIOQuietly(fc);
             }
-            if (oldestFile == null) return 0;
-            long fileSize = oldestFile.length();
-            if (oldestFile.delete()) {
-                lastUsageDates.remove(oldestFile);
-                return fileSize;
+        }
+
+        /**
+         * Read the header only, the data of the returned record is null and its offset is where the
+         * payload starts.
+         *
+         * @return the header, or null if the file is not completely written
+         */
+        private static Record readHeader(final FileChannel fc) throws IOException {
+            long size = fc.size();
+            ByteBuffer prefix = ByteBuffer.allocate((int) Math.min(size, PREFIX_LEN));
+            if (!readFully(fc, prefix, 0)) return null;
+            byte[] bytes = prefix.array();
+            if (size < HEADER_LEN || prefix.getInt(0) != MAGIC) {
+                return hasTimeInfo(bytes)
+                        ? new Record((byte) 0, (byte) 0, getDueTime(bytes), null, TIME_INFO_LEN)
+                        : new Record((byte) 0, (byte) 0, -1, null, 0);
             }
-            return 0;
+            return readHeader(fc, prefix, 0, size);
         }
-    }
 
-    private static final class DiskCacheHelper {
+        /**
+         * Read a record of a segment with positional reads, the channel stays open.
+         *
+         * @throws ClosedChannelException if the channel was closed, the caller tells whether the
+         *                                segment was deleted
+         */
+        private static Record readRecord(final FileChannel fc, final long position, final long size)
+                throws ClosedChannelException {
+            if (size < HEADER_LEN) return null;
+            try {
+                ByteBuffer prefix = ByteBuffer.allocate((int) Math.min(size, PREFIX_LEN));
+                if (!readFully(fc, prefix, position)) return null;
+                if (prefix.getInt(0) != MAGIC) return null;
+                return readRecord(fc, prefix, position, size);
+            } catch (ClosedChannelException e) {
+                throw e;
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            }
+        }
 
-        static final int TIME_INFO_LEN = 14;
+        /**
+         * Read the record whose prefix was read, the part of the payload beyond it is read into the
+         * returned array.
+         */
+        private static Record readRecord(final FileChannel fc,
+                                         final ByteBuffer prefix,
+                                         final long position,
+                                         final long size) throws IOException {
+            Record header = readHeader(fc, prefix, position, size);
+            if (header == null) return null;
+            byte[] data = new byte[(int) (size - header.offset)];
+            int inPrefix = (int) Math.max(Math.min(prefix.capacity() - header.offset, data.length), 0);
+            System.arraycopy(prefix.array(), (int) Math.min(header.offset, prefix.capacity()), data, 0, inPrefix);
+            ByteBuffer rest = ByteBuffer.wrap(data, inPrefix, data.length - inPrefix);
+            if (!readFully(fc, rest, position + header.offset + inPrefix)) return null;
+            return new Record(header.type, header.flags, header.dueTime, data, 0, header.key);
+        }
+
+        /**
+         * Parse the header at the start of the prefix, the key is read from the channel if it goes
+         * beyond the prefix.
+         *
+         * @return the header, or null if its version is unknown or the record is not completely
+         * written
+         */
+        private static Record readHeader(final FileChannel fc,
+                                         final ByteBuffer prefix,
+                                         final long position,
+                                         final long size) throws IOException {
+            prefix.position(4);
+            byte version = prefix.get();
+            if (version > HEADER_VERSION) return null;
+            byte type = prefix.get();
+            byte flags = prefix.get();
+            prefix.get();
+            long dueTime = prefix.getLong();
+            long length = prefix.getLong();
+            long offset = HEADER_LEN;
+            String key = null;
+            if (version >= 2) {
+                if (size < HEADER_LEN + KEY_LENGTH_LEN) return null;
+                int keyLength = prefix.getShort(HEADER_LEN) & 0xFFFF;
+                offset = HEADER_LEN + KEY_LENGTH_LEN + keyLength;
+                if (offset > size) return null;
+                byte[] keyBytes = new byte[keyLength];
+                int inPrefix = Math.min(keyLength, prefix.capacity() - HEADER_LEN - KEY_LENGTH_LEN);
+                System.arraycopy(prefix.array(), HEADER_LEN + KEY_LENGTH_LEN, keyBytes, 0, inPrefix);
+                ByteBuffer rest = ByteBuffer.wrap(keyBytes, inPrefix, keyLength - inPrefix);
+                if (!readFully(fc, rest, position + HEADER_LEN + KEY_LENGTH_LEN + inPrefix)) return null;
+                if (keyLength > 0) key = UtilsBridge.bytes2String(keyBytes);
+            }
+            if (length != size - offset) return null;
+            return new Record(type, flags, dueTime, null, offset, key);
+        }
+
+        private static boolean readFully(final FileChannel fc,
+                                         final ByteBuffer buffer,
+                                         long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                int read = fc.read(buffer, position);
+                if (read < 0) return false;
+                position += read;
+            }
+            return true;
+        }
+
+        private static boolean readFully(final FileChannel fc,
+                                         final ByteBuffer[] buffers,
+                                         long remaining) throws IOException {
+            while (remaining > 0) {
+                long read = fc.read(buffers);
+                if (read < 0) return false;
+                remaining -= read;
+            }
+            return true;
+        }
+
+        /**
+         * Return width(4) + height(4) + config name length(1) + config name + pixels, null if the
+         * pixels can't be copied, e.g. of a hardware bitmap.
+         */
+        private static byte[] rawBitmap2Bytes(final Bitmap bitmap) {
+            if (bitmap == null || bitmap.isRecycled() || bitmap.getConfig() == null) return null;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+                    && bitmap.getConfig() == Bitmap.Config.HARDWARE) {
+                return null;
+            }
+            byte[] config = bitmap.getConfig().name().getBytes();
+            ByteBuffer buffer = ByteBuffer.allocate(9 + config.length + bitmap.getByteCount());
+            buffer.putInt(bitmap.getWidth())
+                    .putInt(bitmap.getHeight())
+                    .put((byte) config.length)
+                    .put(config);
+            bitmap.copyPixelsToBuffer(buffer);
+            return buffer.array();
+        }
+
+        private static Bitmap bytes2RawBitmap(final byte[] bytes, final Bitmap reuse) {
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                int width = buffer.getInt();
+                int height = buffer.getInt();
+                byte[] name = new byte[buffer.get()];
+                buffer.get(name);
+                Bitmap.Config config = Bitmap.Config.valueOf(new String(name));
+                Bitmap bitmap = null;
+                if (reuse != null && reuse.isMutable() && !reuse.isRecycled()
+                        && Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT
+                        && reuse.getAllocationByteCount() >= buffer.remaining()) {
+                    reuse.reconfigure(width, height, config);
+                    bitmap = reuse;
+                }
+                if (bitmap == null) bitmap = Bitmap.createBitmap(width, height, config);
+                bitmap.copyPixelsFromBuffer(buffer);
+                return bitmap;
+            } catch (RuntimeException e) {
+                // unknown config or truncated pixels
+                e.printStackTrace();
+                return null;
+            }
+        }
 
-        private static byte[] newByteArrayWithTime(final int second, final byte[] data) {
-            byte[] time = createDueTime(second).getBytes();
-            byte[] content = new byte[time.length + data.length];
-            System.arraycopy(time, 0, content, 0, time.length);
-            System.arraycopy(data, 0, content, time.length, data.length);
-            return content;
+        /**
+         * Return the value of the record, decompressed if needed.
+         *
+         * @return the value, null if it can't be decompressed
+         */
+        private static byte[] decode(final Record record) {
+            if ((record.flags & FLAG_DEFLATE) == 0) return record.data;
+            return inflate(record.data);
         }
 
         /**
-         * Return the string of due time.
+         * Deflate the data with a pooled deflater, the raw length is prepended so it is inflated
+         * into an exact array.
          *
-         * @param seconds The seconds.
-         * @return the string of due time
+         * @return the deflated data, null if it doesn't save at least 1/8 of the length
          */
-        private static String createDueTime(final int seconds) {
-            return String.format(
-                    Locale.getDefault(), "_$%010d$_",
-                    System.currentTimeMillis() / 1000 + seconds
-            );
+        private static byte[] deflate(final byte[] data, final int level) {
+            Deflater deflater = null;
+            synchronized (DEFLATERS) {
+                if (!DEFLATERS.isEmpty()) deflater = DEFLATERS.remove(DEFLATERS.size() - 1);
+            }
+            if (deflater == null) deflater = new Deflater();
+            try {
+                deflater.setLevel(level);
+                int limit = data.length - (data.length >>> 3);
+                if (limit <= 4) return null;
+                byte[] out = new byte[limit];
+                ByteBuffer.wrap(out).putInt(data.length);
+                deflater.setInput(data);
+                deflater.finish();
+                int len = 4;
+                while (!deflater.finished() && len < limit) {
+                    len += deflater.deflate(out, len, limit - len);
+                }
+                if (!deflater.finished()) return null;
+                return copyOfRange(out, 0, len);
+            } finally {
+                deflater.reset();
+                synchronized (DEFLATERS) {
+                    if (DEFLATERS.size() < CODER_POOL_SIZE) {
+                        DEFLATERS.add(deflater);
+                        deflater = null;
+                    }
+                }
+                if (deflater != null) deflater.end();
+            }
+        }
+
+        private static byte[] inflate(final byte[] data) {
+            if (data.length < 4) return null;
+            int rawLength = ByteBuffer.wrap(data).getInt();
+            if (rawLength < 0) return null;
+            Inflater inflater = null;
+            synchronized (INFLATERS) {
+                if (!INFLATERS.isEmpty()) inflater = INFLATERS.remove(INFLATERS.size() - 1);
+            }
+            if (inflater == null) inflater = new Inflater();
+            try {
+                byte[] out = new byte[rawLength];
+                inflater.setInput(data, 4, data.length - 4);
+                int len = 0;
+                while (len < rawLength) {
+                    int read = inflater.inflate(out, len, rawLength - len);
+                    if (read == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    len += read;
+                }
+                if (len != rawLength) {
+                    Log.e("CacheDiskUtils", "inflate failed: " + len + " of " + rawLength);
+                    return null;
+                }
+                return out;
+            } catch (DataFormatException e) {
+                e.printStackTrace();
+                return null;
+            } finally {
+                inflater.reset();
+                synchronized (INFLATERS) {
+                    if (INFLATERS.size() < CODER_POOL_SIZE) {
+                        INFLATERS.add(inflater);
+                        inflater = null;
+                    }
+                }
+                if (inflater != null) inflater.end();
+            }
         }
 
-        private static boolean isDue(final byte[] data) {
-            long millis = getDueTime(data);
-            return millis != -1 && System.currentTimeMillis() > millis;
+        /**
+         * Read the files written before the binary header, whose optional due time is "_$seconds$_".
+         */
+        private static Record readLegacyRecord(final byte[] data) {
+            return new Record((byte) 0, (byte) 0, getDueTime(data), getDataWithoutDueTime(data));
         }
 
         private static long getDueTime(final byte[] data) {
@@ -872,4 +5857,39 @@ public final class CacheDiskUtils implements CacheConstants {
                     && data[13] == '_';
         }
     }
-}
\ No newline at end of file
+
+    private static final class Record {
+        final byte   type;
+        final byte   flags;  // The codec flags of the data.
+        final long   dueTime;
+        final byte[] data;
+        final long   offset; // The offset of the payload in the file.
+        final String key;    // The key stored in the header, null if unknown.
+
+        Record(final byte type, final byte flags, final long dueTime, final byte[] data) {
+            this(type, flags, dueTime, data, 0);
+        }
+
+        Record(final byte type, final byte flags, final long dueTime, final byte[] data, final long offset) {
+            this(type, flags, dueTime, data, offset, null);
+        }
+
+        Record(final byte type,
+               final byte flags,
+               final long dueTime,
+               final byte[] data,
+               final long offset,
+               final String key) {
+            this.type = type;
+            this.flags = flags;
+            this.dueTime = dueTime;
+            this.data = data;
+            this.offset = offset;
+            this.key = key;
+        }
+
+        boolean isDue() {
+            return dueTime != -1 && System.currentTimeMillis() > dueTime;
+        }
+    }
+}
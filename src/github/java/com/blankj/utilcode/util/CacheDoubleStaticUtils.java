@@ -8,6 +8,8 @@ import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.Map;
 
 import androidx.annotation.NonNull;
 
@@ -406,6 +408,61 @@ public final class CacheDoubleStaticUtils {
         return getSerializable(key, defaultValue, getDefaultCacheDoubleUtils());
     }
 
+    ///////////////////////////////////////////////////////////////////////////
+    // about batch
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Put the values in cache, each one is put as the type of its class.
+     *
+     * @param values The values of cache.
+     */
+    public static void putAll(@NonNull final Map<String, ?> values) {
+        putAll(values, getDefaultCacheDoubleUtils());
+    }
+
+    /**
+     * Put the values in cache, each one is put as the type of its class.
+     *
+     * @param values   The values of cache.
+     * @param saveTime The save time of cache, in seconds.
+     */
+    public static void putAll(@NonNull final Map<String, ?> values, final int saveTime) {
+        putAll(values, saveTime, getDefaultCacheDoubleUtils());
+    }
+
+    /**
+     * Return the values in cache, the misses of memory are read from disk in one batch.
+     *
+     * @param keys The keys of cache.
+     * @return the values of the keys which exist
+     */
+    public static Map<String, Object> getAll(@NonNull final Collection<String> keys) {
+        return getAll(keys, getDefaultCacheDoubleUtils());
+    }
+
+    /**
+     * Return the values in cache, the misses of memory are read from disk in one batch. The values
+     * read are kept in memory for the rest of their save time, except of Parcelables and values put
+     * before types were stored, which are returned as bytes.
+     *
+     * @param keys     The keys of cache.
+     * @param parallel True to read the files across the io pool.
+     * @return the values of the keys which exist
+     */
+    public static Map<String, Object> getAll(@NonNull final Collection<String> keys, final boolean parallel) {
+        return getAll(keys, parallel, getDefaultCacheDoubleUtils());
+    }
+
+    /**
+     * Remove the cache by keys.
+     *
+     * @param keys The keys of cache.
+     */
+    public static void removeAll(@NonNull final Collection<String> keys) {
+        removeAll(keys, getDefaultCacheDoubleUtils());
+    }
+
     /**
      * Return the size of cache in disk.
      *
@@ -433,6 +490,15 @@ public final class CacheDoubleStaticUtils {
         return getCacheMemoryCount(getDefaultCacheDoubleUtils());
     }
 
+    /**
+     * Return the size of cache in memory, see {@link CacheMemoryUtils#getCacheSize()}.
+     *
+     * @return the size of cache in memory.
+     */
+    public static int getCacheMemorySize() {
+        return getCacheMemorySize(getDefaultCacheDoubleUtils());
+    }
+
     /**
      * Remove the cache by key.
      *
@@ -449,6 +515,13 @@ public final class CacheDoubleStaticUtils {
         clear(getDefaultCacheDoubleUtils());
     }
 
+    /**
+     * Invalidate all of the cache, the disk files are reclaimed in background.
+     */
+    public static void invalidateAll() {
+        invalidateAll(getDefaultCacheDoubleUtils());
+    }
+
     ///////////////////////////////////////////////////////////////////////////
     // dividing line
     ///////////////////////////////////////////////////////////////////////////
@@ -914,6 +987,73 @@ public final class CacheDoubleStaticUtils {
         return cacheDoubleUtils.getSerializable(key, defaultValue);
     }
 
+    ///////////////////////////////////////////////////////////////////////////
+    // about batch
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Put the values in cache, each one is put as the type of its class.
+     *
+     * @param values           The values of cache.
+     * @param cacheDoubleUtils The instance of {@link CacheDoubleUtils}.
+     */
+    public static void putAll(@NonNull final Map<String, ?> values,
+                              @NonNull final CacheDoubleUtils cacheDoubleUtils) {
+        cacheDoubleUtils.putAll(values);
+    }
+
+    /**
+     * Put the values in cache, each one is put as the type of its class.
+     *
+     * @param values           The values of cache.
+     * @param saveTime         The save time of cache, in seconds.
+     * @param cacheDoubleUtils The instance of {@link CacheDoubleUtils}.
+     */
+    public static void putAll(@NonNull final Map<String, ?> values,
+                              final int saveTime,
+                              @NonNull final CacheDoubleUtils cacheDoubleUtils) {
+        cacheDoubleUtils.putAll(values, saveTime);
+    }
+
+    /**
+     * Return the values in cache, the misses of memory are read from disk in one batch.
+     *
+     * @param keys             The keys of cache.
+     * @param cacheDoubleUtils The instance of {@link CacheDoubleUtils}.
+     * @return the values of the keys which exist
+     */
+    public static Map<String, Object> getAll(@NonNull final Collection<String> keys,
+                                             @NonNull final CacheDoubleUtils cacheDoubleUtils) {
+        return cacheDoubleUtils.getAll(keys);
+    }
+
+    /**
+     * Return the values in cache, the misses of memory are read from disk in one batch. The values
+     * read are kept in memory for the rest of their save time, except of Parcelables and values put
+     * before types were stored, which are returned as bytes.
+     *
+     * @param keys             The keys of cache.
+     * @param parallel         True to read the files across the io pool.
+     * @param cacheDoubleUtils The instance of {@link CacheDoubleUtils}.
+     * @return the values of the keys which exist
+     */
+    public static Map<String, Object> getAll(@NonNull final Collection<String> keys,
+                                             final boolean parallel,
+                                             @NonNull final CacheDoubleUtils cacheDoubleUtils) {
+        return cacheDoubleUtils.getAll(keys, parallel);
+    }
+
+    /**
+     * Remove the cache by keys.
+     *
+     * @param keys             The keys of cache.
+     * @param cacheDoubleUtils The instance of {@link CacheDoubleUtils}.
+     */
+    public static void removeAll(@NonNull final Collection<String> keys,
+                                 @NonNull final CacheDoubleUtils cacheDoubleUtils) {
+        cacheDoubleUtils.removeAll(keys);
+    }
+
     /**
      * Return the size of cache in disk.
      *
@@ -944,6 +1084,16 @@ public final class CacheDoubleStaticUtils {
         return cacheDoubleUtils.getCacheMemoryCount();
     }
 
+    /**
+     * Return the size of cache in memory, see {@link CacheMemoryUtils#getCacheSize()}.
+     *
+     * @param cacheDoubleUtils The instance of {@link CacheDoubleUtils}.
+     * @return the size of cache in memory.
+     */
+    public static int getCacheMemorySize(@NonNull final CacheDoubleUtils cacheDoubleUtils) {
+        return cacheDoubleUtils.getCacheMemorySize();
+    }
+
     /**
      * Remove the cache by key.
      *
@@ -963,6 +1113,15 @@ public final class CacheDoubleStaticUtils {
         cacheDoubleUtils.clear();
     }
 
+    /**
+     * Invalidate all of the cache, the disk files are reclaimed in background.
+     *
+     * @param cacheDoubleUtils The instance of {@link CacheDoubleUtils}.
+     */
+    public static void invalidateAll(@NonNull final CacheDoubleUtils cacheDoubleUtils) {
+        cacheDoubleUtils.invalidateAll();
+    }
+
     private static CacheDoubleUtils getDefaultCacheDoubleUtils() {
         return sDefaultCacheDoubleUtils != null ? sDefaultCacheDoubleUtils : CacheDoubleUtils.getInstance();
     }
@@ -11,7 +11,10 @@ import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -509,6 +512,87 @@ public final class CacheDoubleUtils implements CacheConstants {
         return defaultValue;
     }
 
+    ///////////////////////////////////////////////////////////////////////////
+    // about batch
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Put the values in cache, each one is put as the type of its class.
+     *
+     * @param values The values of cache.
+     */
+    public void putAll(@NonNull final Map<String, ?> values) {
+        putAll(values, -1);
+    }
+
+    /**
+     * Put the values in cache, each one is put as the type of its class.
+     *
+     * @param values   The values of cache.
+     * @param saveTime The save time of cache, in seconds.
+     */
+    public void putAll(@NonNull final Map<String, ?> values, final int saveTime) {
+        for (Map.Entry<String, ?> entry : values.entrySet()) {
+            mCacheMemoryUtils.put(entry.getKey(), entry.getValue(), saveTime);
+        }
+        mCacheDiskUtils.putAll(values, saveTime);
+    }
+
+    /**
+     * Return the values in cache, the misses of memory are read from disk in one batch.
+     *
+     * @param keys The keys of cache.
+     * @return the values of the keys which exist
+     */
+    public Map<String, Object> getAll(@NonNull final Collection<String> keys) {
+        return getAll(keys, false);
+    }
+
+    /**
+     * Return the values in cache, the misses of memory are read from disk in one batch. The values
+     * read are kept in memory for the rest of their save time, except of Parcelables and values put
+     * before types were stored, which are returned as bytes.
+     *
+     * @param keys     The keys of cache.
+     * @param parallel True to read the files across the io pool.
+     * @return the values of the keys which exist
+     */
+    public Map<String, Object> getAll(@NonNull final Collection<String> keys, final boolean parallel) {
+        Map<String, Object> values = new HashMap<>();
+        List<String> misses = new ArrayList<>();
+        for (String key : keys) {
+            Object obj = mCacheMemoryUtils.get(key);
+            if (obj != null) {
+                values.put(key, obj);
+            } else {
+                misses.add(key);
+            }
+        }
+        if (misses.isEmpty()) return values;
+        Map<String, Integer> saveTimes = new HashMap<>();
+        Map<String, Object> loaded = mCacheDiskUtils.getAll(misses, parallel, saveTimes);
+        for (Map.Entry<String, Integer> entry : saveTimes.entrySet()) {
+            int saveTime = entry.getValue();
+            // due within the second
+            if (saveTime == 0) continue;
+            mCacheMemoryUtils.put(entry.getKey(), loaded.get(entry.getKey()), saveTime);
+        }
+        values.putAll(loaded);
+        return values;
+    }
+
+    /**
+     * Remove the cache by keys.
+     *
+     * @param keys The keys of cache.
+     */
+    public void removeAll(@NonNull final Collection<String> keys) {
+        for (String key : keys) {
+            mCacheMemoryUtils.remove(key);
+        }
+        mCacheDiskUtils.removeAll(keys);
+    }
+
     /**
      * Return the size of cache in disk.
      *
@@ -536,6 +620,15 @@ public final class CacheDoubleUtils implements CacheConstants {
         return mCacheMemoryUtils.getCacheCount();
     }
 
+    /**
+     * Return the size of cache in memory, see {@link CacheMemoryUtils#getCacheSize()}.
+     *
+     * @return the size of cache in memory.
+     */
+    public int getCacheMemorySize() {
+        return mCacheMemoryUtils.getCacheSize();
+    }
+
     /**
      * Remove the cache by key.
      *
@@ -553,4 +646,12 @@ public final class CacheDoubleUtils implements CacheConstants {
         mCacheMemoryUtils.clear();
         mCacheDiskUtils.clear();
     }
+
+    /**
+     * Invalidate all of the cache, the disk files are reclaimed in background.
+     */
+    public void invalidateAll() {
+        mCacheMemoryUtils.clear();
+        mCacheDiskUtils.invalidateAll();
+    }
 }
@@ -76,6 +76,16 @@ public final class CacheMemoryStaticUtils {
         return getCacheCount(getDefaultCacheMemoryUtils());
     }
 
+    /**
+     * Return the size of cache, the sum of the weights of the values, which is the count of cache
+     * if it has no weigher.
+     *
+     * @return the size of cache
+     */
+    public static int getCacheSize() {
+        return getCacheSize(getDefaultCacheMemoryUtils());
+    }
+
     /**
      * Remove the cache by key.
      *
@@ -162,6 +172,17 @@ public final class CacheMemoryStaticUtils {
         return cacheMemoryUtils.getCacheCount();
     }
 
+    /**
+     * Return the size of cache, the sum of the weights of the values, which is the count of cache
+     * if it has no weigher.
+     *
+     * @param cacheMemoryUtils The instance of {@link CacheMemoryUtils}.
+     * @return the size of cache
+     */
+    public static int getCacheSize(@NonNull final CacheMemoryUtils cacheMemoryUtils) {
+        return cacheMemoryUtils.getCacheSize();
+    }
+
     /**
      * Remove the cache by key.
      *
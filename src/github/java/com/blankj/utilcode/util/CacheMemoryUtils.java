@@ -1,12 +1,34 @@
 package com.blankj.utilcode.util;
 
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.os.Parcel;
+import android.os.Parcelable;
+
 import androidx.annotation.NonNull;
 import androidx.collection.LruCache;
 
 import com.blankj.utilcode.constant.CacheConstants;
 
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * <pre>
@@ -20,10 +42,13 @@ public final class CacheMemoryUtils implements CacheConstants {
 
     private static final int DEFAULT_MAX_COUNT = 256;
 
-    private static final Map<String, CacheMemoryUtils> CACHE_MAP = new HashMap<>();
+    private static final Map<String, CacheMemoryUtils> CACHE_MAP          = new HashMap<>();
+    private static final Map<String, CacheMemoryUtils> WEIGHTED_CACHE_MAP = new HashMap<>(); // Apart from the count-based ones, which may share their keys.
 
     private final String                       mCacheKey;
     private final LruCache<String, CacheValue> mMemoryCache;
+    private final Weigher                      mWeigher;
+    private final AtomicInteger                mCount; // The count of a weighted cache, whose size is its weight.
 
     /**
      * Return the single {@link CacheMemoryUtils} instance.
@@ -57,7 +82,7 @@ public final class CacheMemoryUtils implements CacheConstants {
             synchronized (CacheMemoryUtils.class) {
                 cache = CACHE_MAP.get(cacheKey);
                 if (cache == null) {
-                    cache = new CacheMemoryUtils(cacheKey, new LruCache<String, CacheValue>(maxCount));
+                    cache = new CacheMemoryUtils(cacheKey, new LruCache<String, CacheValue>(maxCount), null, null);
                     CACHE_MAP.put(cacheKey, cache);
                 }
             }
@@ -65,9 +90,57 @@ public final class CacheMemoryUtils implements CacheConstants {
         return cache;
     }
 
-    private CacheMemoryUtils(String cacheKey, LruCache<String, CacheValue> memoryCache) {
+    /**
+     * Return the single {@link CacheMemoryUtils} instance whose capacity is in bytes, each value
+     * takes the room its weight tells instead of one slot. Values heavier than the whole capacity
+     * aren't cached. The key doesn't return a count-based instance of the same key.
+     *
+     * @param cacheKey The key of cache.
+     * @param maxSize  The max size of cache, in bytes.
+     * @param weigher  The weigher of the values, e.g. {@link SizeWeigher}.
+     * @return the single {@link CacheMemoryUtils} instance
+     */
+    public static CacheMemoryUtils getInstance(final String cacheKey,
+                                               final long maxSize,
+                                               @NonNull final Weigher weigher) {
+        CacheMemoryUtils cache = WEIGHTED_CACHE_MAP.get(cacheKey);
+        if (cache == null) {
+            synchronized (CacheMemoryUtils.class) {
+                cache = WEIGHTED_CACHE_MAP.get(cacheKey);
+                if (cache == null) {
+                    final AtomicInteger count = new AtomicInteger();
+                    LruCache<String, CacheValue> memoryCache =
+                            new LruCache<String, CacheValue>((int) Math.min(Math.max(maxSize, 1), Integer.MAX_VALUE)) {
+                                @Override
+                                protected int sizeOf(@NonNull String key, @NonNull CacheValue value) {
+                                    return value.weight;
+                                }
+
+                                @Override
+                                protected void entryRemoved(boolean evicted,
+                                                            @NonNull String key,
+                                                            @NonNull CacheValue oldValue,
+                                                            CacheValue newValue) {
+                                    // a replaced value is counted once
+                                    if (newValue == null) count.decrementAndGet();
+                                }
+                            };
+                    cache = new CacheMemoryUtils(cacheKey, memoryCache, weigher, count);
+                    WEIGHTED_CACHE_MAP.put(cacheKey, cache);
+                }
+            }
+        }
+        return cache;
+    }
+
+    private CacheMemoryUtils(String cacheKey,
+                             LruCache<String, CacheValue> memoryCache,
+                             Weigher weigher,
+                             AtomicInteger count) {
         mCacheKey = cacheKey;
         mMemoryCache = memoryCache;
+        mWeigher = weigher;
+        mCount = count;
     }
 
     @Override
@@ -95,7 +168,15 @@ public final class CacheMemoryUtils implements CacheConstants {
     public void put(@NonNull final String key, final Object value, int saveTime) {
         if (value == null) return;
         long dueTime = saveTime < 0 ? -1 : System.currentTimeMillis() + saveTime * 1000;
-        mMemoryCache.put(key, new CacheValue(dueTime, value));
+        // weighed once, so the size the cache adds up stays the same when the value changes
+        int weight = mWeigher == null ? 1 : Math.max(mWeigher.weigh(key, value), 0);
+        if (weight > mMemoryCache.maxSize()) {
+            // it would evict everything else before itself
+            mMemoryCache.remove(key);
+            return;
+        }
+        CacheValue previous = mMemoryCache.put(key, new CacheValue(dueTime, value, weight));
+        if (previous == null && mCount != null) mCount.incrementAndGet();
     }
 
     /**
@@ -134,6 +215,16 @@ public final class CacheMemoryUtils implements CacheConstants {
      * @return the count of cache
      */
     public int getCacheCount() {
+        return mCount == null ? mMemoryCache.size() : Math.max(mCount.get(), 0);
+    }
+
+    /**
+     * Return the size of cache, the sum of the weights of the values, which is the count of cache
+     * if it has no weigher.
+     *
+     * @return the size of cache
+     */
+    public int getCacheSize() {
         return mMemoryCache.size();
     }
 
@@ -159,10 +250,235 @@ public final class CacheMemoryUtils implements CacheConstants {
     private static final class CacheValue {
         long   dueTime;
         Object value;
+        int    weight;
 
-        CacheValue(long dueTime, Object value) {
+        CacheValue(long dueTime, Object value, int weight) {
             this.dueTime = dueTime;
             this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * The weigher of the values of a cache whose capacity is in bytes.
+     */
+    public interface Weigher {
+        /**
+         * Return the weight of the value, in bytes, called once when it is put.
+         *
+         * @param key   The key of cache.
+         * @param value The value of cache.
+         * @return the weight of the value
+         */
+        int weigh(@NonNull String key, @NonNull Object value);
+    }
+
+    /**
+     * Weigh values by the memory they hold: bytes, strings, bitmaps, JSON and drawables by their
+     * content, parcelables by their parceled size, and any other value by a deep size estimate
+     * of its object graph.
+     * <p>The estimate walks the fields by reflection, so weigh large graphs put often with a
+     * {@link Weigher} of their own.</p>
+     */
+    public static final class SizeWeigher implements Weigher {
+
+        private static final int OBJECT_HEADER = 8;  // The header of an object on ART.
+        private static final int ARRAY_HEADER  = 12; // The header of an array, with its length.
+        private static final int REFERENCE     = 4;
+        private static final int MAX_VISITS    = 10000; // The max count of objects an estimate walks.
+
+        private static final Map<Class<?>, ClassLayout> LAYOUTS = new HashMap<>();
+
+        @Override
+        public int weigh(@NonNull final String key, @NonNull final Object value) {
+            return (int) Math.min(sizeOf(key) + sizeOf(value), Integer.MAX_VALUE);
+        }
+
+        /**
+         * Return the estimated size of the value, in bytes.
+         *
+         * @param value The value.
+         * @return the estimated size of the value
+         */
+        public static long sizeOf(final Object value) {
+            if (value == null) return 0;
+            if (value instanceof byte[]) return align(ARRAY_HEADER + ((byte[]) value).length);
+            if (value instanceof String) return sizeOfString((String) value);
+            if (value instanceof Bitmap) return sizeOfBitmap((Bitmap) value);
+            if (value instanceof JSONObject || value instanceof JSONArray) return sizeOfJson(value);
+            if (value instanceof Drawable) return sizeOfDrawable((Drawable) value);
+            if (value instanceof Parcelable) return sizeOfParcelable((Parcelable) value);
+            return deepSizeOf(value);
+        }
+
+        private static long sizeOfString(final String value) {
+            // count(4) + hash(4), the chars take two bytes unless compressed
+            return align(OBJECT_HEADER + 8 + 2L * value.length());
+        }
+
+        private static long sizeOfBitmap(final Bitmap bitmap) {
+            if (bitmap.isRecycled()) return OBJECT_HEADER;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) return bitmap.getAllocationByteCount();
+            return bitmap.getByteCount();
+        }
+
+        private static long sizeOfDrawable(final Drawable drawable) {
+            if (drawable instanceof BitmapDrawable) {
+                Bitmap bitmap = ((BitmapDrawable) drawable).getBitmap();
+                if (bitmap != null) return sizeOfBitmap(bitmap);
+            }
+            // drawn at its intrinsic size in ARGB_8888
+            return 4L * Math.max(drawable.getIntrinsicWidth(), 1) * Math.max(drawable.getIntrinsicHeight(), 1);
+        }
+
+        private static long sizeOfParcelable(final Parcelable value) {
+            Parcel parcel = Parcel.obtain();
+            try {
+                value.writeToParcel(parcel, 0);
+                return OBJECT_HEADER + parcel.dataSize();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                return deepSizeOf(value);
+            } finally {
+                parcel.recycle();
+            }
+        }
+
+        /**
+         * Return the size of the JSON value with the entries of its map or list.
+         */
+        private static long sizeOfJson(final Object value) {
+            if (value instanceof String) return sizeOfString((String) value);
+            if (value instanceof JSONObject) {
+                JSONObject object = (JSONObject) value;
+                long size = 64;
+                Iterator<String> keys = object.keys();
+                while (keys.hasNext()) {
+                    String name = keys.next();
+                    size += 32 + sizeOfString(name) + sizeOfJson(object.opt(name));
+                }
+                return size;
+            }
+            if (value instanceof JSONArray) {
+                JSONArray array = (JSONArray) value;
+                long size = 48 + align(ARRAY_HEADER + (long) REFERENCE * array.length());
+                for (int i = 0; i < array.length(); i++) {
+                    size += sizeOfJson(array.opt(i));
+                }
+                return size;
+            }
+            // boxed numbers and booleans, JSONObject.NULL is shared
+            return value == null || value == JSONObject.NULL ? 0 : 16;
+        }
+
+        /**
+         * Walk the object graph of the value and add up the shallow sizes of the objects in it,
+         * each one counted once. Collections and maps are walked through their elements, classes
+         * are shared and left out, the walk stops after {@link #MAX_VISITS} objects.
+         */
+        private static long deepSizeOf(final Object value) {
+            Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+            ArrayDeque<Object> stack = new ArrayDeque<>();
+            stack.push(value);
+            long size = 0;
+            while (!stack.isEmpty() && visited.size() < MAX_VISITS) {
+                Object object = stack.pop();
+                if (object instanceof Class || !visited.add(object)) continue;
+                if (object instanceof String || object instanceof Bitmap) {
+                    size += sizeOf(object);
+                    continue;
+                }
+                // the fields of the platform collections may not be accessible
+                if (object instanceof Collection) {
+                    Collection<?> collection = (Collection<?>) object;
+                    size += align(OBJECT_HEADER + 16) + align(ARRAY_HEADER + (long) REFERENCE * collection.size());
+                    for (Object element : collection) {
+                        if (element != null) stack.push(element);
+                    }
+                    continue;
+                }
+                if (object instanceof Map) {
+                    Map<?, ?> map = (Map<?, ?>) object;
+                    // the table and a node of key, value, hash and next per entry
+                    size += 48 + align(ARRAY_HEADER + (long) REFERENCE * map.size()) + 32L * map.size();
+                    for (Map.Entry<?, ?> entry : map.entrySet()) {
+                        if (entry.getKey() != null) stack.push(entry.getKey());
+                        if (entry.getValue() != null) stack.push(entry.getValue());
+                    }
+                    continue;
+                }
+                Class<?> clazz = object.getClass();
+                if (clazz.isArray()) {
+                    Class<?> component = clazz.getComponentType();
+                    int length = Array.getLength(object);
+                    size += align(ARRAY_HEADER + (long) sizeOfType(component) * length);
+                    if (component.isPrimitive()) continue;
+                    for (int i = 0; i < length; i++) {
+                        Object element = Array.get(object, i);
+                        if (element != null) stack.push(element);
+                    }
+                    continue;
+                }
+                ClassLayout layout = getLayout(clazz);
+                size += layout.size;
+                for (Field field : layout.references) {
+                    try {
+                        Object referent = field.get(object);
+                        if (referent != null) stack.push(referent);
+                    } catch (IllegalAccessException ignore) {
+                    }
+                }
+            }
+            return size;
+        }
+
+        private static ClassLayout getLayout(final Class<?> clazz) {
+            synchronized (LAYOUTS) {
+                ClassLayout layout = LAYOUTS.get(clazz);
+                if (layout != null) return layout;
+            }
+            long size = OBJECT_HEADER;
+            List<Field> references = new ArrayList<>();
+            for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers())) continue;
+                    size += sizeOfType(field.getType());
+                    if (field.getType().isPrimitive()) continue;
+                    try {
+                        field.setAccessible(true);
+                        references.add(field);
+                    } catch (RuntimeException ignore) {
+                        // inaccessible, its referent isn't counted
+                    }
+                }
+            }
+            ClassLayout layout = new ClassLayout(align(size), references.toArray(new Field[0]));
+            synchronized (LAYOUTS) {
+                LAYOUTS.put(clazz, layout);
+            }
+            return layout;
+        }
+
+        private static int sizeOfType(final Class<?> type) {
+            if (type == long.class || type == double.class) return 8;
+            if (type == int.class || type == float.class) return 4;
+            if (type == short.class || type == char.class) return 2;
+            if (type == byte.class || type == boolean.class) return 1;
+            return REFERENCE;
+        }
+
+        private static long align(final long size) {
+            return (size + 7) & ~7L;
+        }
+
+        private static final class ClassLayout {
+            final long    size;       // The shallow size of an instance.
+            final Field[] references; // The fields which hold references.
+
+            ClassLayout(final long size, final Field[] references) {
+                this.size = size;
+                this.references = references;
+            }
         }
     }
 }
\ No newline at end of file
@@ -247,6 +247,14 @@ class UtilsBridge {
         return EncodeUtils.base64Decode(input);
     }
 
+    static String urlEncode(final String input) {
+        return EncodeUtils.urlEncode(input);
+    }
+
+    static String urlDecode(final String input) {
+        return EncodeUtils.urlDecode(input);
+    }
+
     ///////////////////////////////////////////////////////////////////////////
     // EncryptUtils
     ///////////////////////////////////////////////////////////////////////////